@@ -0,0 +1,248 @@
+package uk.ac.bradford.cookgame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Checks that playing a turn (GameEngine.doTurn, through playTurn) and
+ * drawing a frame (Canvas.paintComponent, or Canvas.render with active
+ * rendering) allocate nothing once the game is
+ * warmed up, using the number of bytes the JVM has allocated on this thread
+ * (com.sun.management.ThreadMXBean.getThreadAllocatedBytes). Any allocation
+ * on these paths eventually means a garbage collection, which shows up as a
+ * hitch in the frame rate.
+ *
+ * The check plays a headless game with random moves from a fixed seed. Turns
+ * that start a new level are not counted, because building a level allocates
+ * its tiles. The JIT compiler removes some short-lived objects made inside
+ * the JDK's drawing code, and code that has not been compiled yet can allocate
+ * now and then, so the game is warmed up first, in rounds, until the JIT
+ * compiles nothing during a whole round (or MAX_WARMUPS rounds have been
+ * played). After that the check measures WINDOWS windows of turns and frames,
+ * reports the window in which the most turns or frames allocated, and fails
+ * if more than MAX_ALLOCATING_STEPS of them allocated in any window. A few are
+ * allowed because even after warming up the JIT compiler now and then throws
+ * away compiled code whose assumptions stopped holding, which puts back
+ * objects it had optimised away; this hits a different turn on every run of
+ * the same seeded game. Code that allocates on every turn or frame, or on
+ * most of them, still fails. Run it with
+ * "ant alloc-check"; it exits with status 1 if the check fails.
+ *
+ * @author prtrundl
+ */
+public class AllocationCheck {
+
+    private static final char[] MOVES = {'U', 'D', 'L', 'R'};
+    private static final int WARMUP_TURNS = 100000;
+    private static final int WINDOW_TURNS = 100000;
+    private static final int WARMUP_FRAMES = 20000;
+    private static final int WINDOW_FRAMES = 5000;
+    private static final int WINDOWS = 5;
+    private static final int MAX_WARMUPS = 5;
+    private static final int MAX_ALLOCATING_STEPS = 5;
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final long threadId = Thread.currentThread().getId();
+    private final CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+    private final GameEngine engine = new GameEngine(GameDisplay.NONE, GameEngine.LEVEL_WIDTH,
+            GameEngine.LEVEL_HEIGHT, 42);
+    private final Random random = new Random(42);
+
+    private AllocationCheck(com.sun.management.ThreadMXBean threads) {
+        this.threads = threads;
+        engine.startGame();
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        EventLog.GAME.setThreshold(EventLog.Severity.WARN);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            System.out.println("Skipped: this JVM cannot count allocated bytes per thread");
+            return;
+        }
+        AllocationCheck check = new AllocationCheck((com.sun.management.ThreadMXBean) threads);
+        boolean turns = check.checkTurns();
+        boolean frames = check.checkFrames(false);
+        boolean rendered = check.checkFrames(true);
+        if (!turns || !frames || !rendered) {
+            System.exit(1);
+        }
+    }
+
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(threadId);
+    }
+
+    /**
+     * Runs a step in rounds until the JIT compiler spends no time compiling
+     * during a round, or MAX_WARMUPS rounds have been run. If the JVM does not
+     * report compilation time, only one round is run.
+     *
+     * @param name the name of the check, for the report
+     * @param step the step to warm up
+     * @param steps the number of steps in a round
+     */
+    private void warmUp(String name, Runnable step, int steps) {
+        int round = 0;
+        long compiled;
+        do {
+            compiled = compilationMillis();
+            for (int i = 0; i < steps; i++) {
+                step.run();
+            }
+            round++;
+        } while (round < MAX_WARMUPS && compilationMillis() != compiled);
+        System.out.println(name + ": warmed up in " + round + " rounds of " + steps);
+    }
+
+    /**
+     * Returns the total time the JIT compiler has spent compiling, or -1 if
+     * the JVM does not report it
+     */
+    private long compilationMillis() {
+        return jit != null && jit.isCompilationTimeMonitoringSupported() ? jit.getTotalCompilationTime() : -1;
+    }
+
+    /**
+     * Plays WINDOWS windows of WINDOW_TURNS turns after warming up.
+     *
+     * @return true if no window had more than MAX_ALLOCATING_STEPS turns
+     * that allocated
+     */
+    private boolean checkTurns() {
+        warmUp("Turns", () -> engine.playTurn(MOVES[random.nextInt(MOVES.length)]), WARMUP_TURNS);
+        int worstWindow = 0;
+        int worstSteps = 0;
+        long worstBytes = 0;
+        for (int window = 1; window <= WINDOWS; window++) {
+            long bytes = 0;
+            int allocating = 0;
+            for (int i = 0; i < WINDOW_TURNS; i++) {
+                char move = MOVES[random.nextInt(MOVES.length)];
+                int level = engine.getLevelNumber();
+                long before = allocated();
+                engine.playTurn(move);
+                long used = allocated() - before;
+                if (used > 0 && engine.getLevelNumber() == level) {
+                    bytes += used;
+                    allocating++;
+                }
+            }
+            System.out.println("Turns, window " + window + ": " + allocating + " of " + WINDOW_TURNS
+                    + " turns allocated " + bytes + " bytes");
+            if (allocating > worstSteps || (allocating == worstSteps && bytes > worstBytes)) {
+                worstWindow = window;
+                worstSteps = allocating;
+                worstBytes = bytes;
+            }
+        }
+        return verdict("Turns", worstWindow, worstSteps, worstBytes);
+    }
+
+    /**
+     * Draws WINDOWS windows of WINDOW_FRAMES frames of the game after warming
+     * up, playing a turn before each. Each frame captures the game into the
+     * Canvas and paints it into an offscreen image, as the Swing thread or the
+     * FrameRenderer would.
+     *
+     * @param active true to draw with active rendering
+     * @return true if no window had more than MAX_ALLOCATING_STEPS frames
+     * that allocated
+     */
+    private boolean checkFrames(boolean active) {
+        String name = active ? "Rendered frames" : "Frames";
+        Canvas canvas = new Canvas();
+        if (active) {
+            canvas.setActive();
+        }
+        canvas.fitTo(width(), height());
+        BufferedImage image = new BufferedImage(width(), height(), BufferedImage.TYPE_INT_RGB);
+        warmUp(name, () -> frame(canvas, image.createGraphics(), active), WARMUP_FRAMES);
+        int worstWindow = 0;
+        int worstSteps = 0;
+        long worstBytes = 0;
+        for (int window = 1; window <= WINDOWS; window++) {
+            long bytes = 0;
+            int allocating = 0;
+            for (int i = 0; i < WINDOW_FRAMES; i++) {
+                Graphics2D g2 = image.createGraphics();    //Swing or the BufferStrategy hands over a Graphics
+                long used = frame(canvas, g2, active);
+                if (used > 0) {
+                    bytes += used;
+                    allocating++;
+                }
+            }
+            System.out.println(name + ", window " + window + ": " + allocating + " of " + WINDOW_FRAMES
+                    + " frames allocated " + bytes + " bytes");
+            if (allocating > worstSteps || (allocating == worstSteps && bytes > worstBytes)) {
+                worstWindow = window;
+                worstSteps = allocating;
+                worstBytes = bytes;
+            }
+        }
+        return verdict(name, worstWindow, worstSteps, worstBytes);
+    }
+
+    /**
+     * Prints whether a check passed, with the window in which the most turns
+     * or frames allocated.
+     *
+     * @param name the name of the check
+     * @param worstWindow the number of the worst window, 0 if none allocated
+     * @param worstSteps the number of turns or frames that allocated in it
+     * @param worstBytes the bytes they allocated
+     * @return true if worstSteps is at most MAX_ALLOCATING_STEPS
+     */
+    private static boolean verdict(String name, int worstWindow, int worstSteps, long worstBytes) {
+        if (worstSteps == 0) {
+            System.out.println(name + ": OK, no window allocated");
+            return true;
+        }
+        String worst = "worst was window " + worstWindow + ", where " + worstSteps + " allocated " + worstBytes + " bytes";
+        if (worstSteps <= MAX_ALLOCATING_STEPS) {
+            System.out.println(name + ": OK, " + worst + " (at most " + MAX_ALLOCATING_STEPS + " allowed)");
+            return true;
+        }
+        System.out.println(name + ": FAILED, " + worst);
+        return false;
+    }
+
+    /**
+     * Plays a turn and draws a frame of it.
+     *
+     * @return the bytes allocated capturing, presenting and painting the
+     * frame, or 0 if the turn started a new level
+     */
+    private long frame(Canvas canvas, Graphics2D g2, boolean active) {
+        int level = engine.getLevelNumber();
+        engine.playTurn(MOVES[random.nextInt(MOVES.length)]);
+        long before = allocated();
+        canvas.capture(engine.getLevel(), engine.getPlayer(), engine.getCustomers(), engine.getScore());
+        if (active) {
+            canvas.render(g2, width(), height());   //presents the snapshot itself
+        } else {
+            canvas.present();       //draws new tiles into the cached background, and is headless here
+            canvas.paintComponent(g2);
+        }
+        long used = allocated() - before;
+        return engine.getLevelNumber() == level ? used : 0;
+    }
+
+    private static int width() {
+        return GameEngine.LEVEL_WIDTH * GameGUI.TILE_WIDTH;
+    }
+
+    private static int height() {
+        return GameEngine.LEVEL_HEIGHT * GameGUI.TILE_HEIGHT;
+    }
+}
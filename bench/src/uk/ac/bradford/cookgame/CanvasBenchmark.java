@@ -0,0 +1,86 @@
+package uk.ac.bradford.cookgame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for drawing a frame with the Canvas class. Frames are drawn into
+ * an offscreen BufferedImage the size of the game window, so no display is
+ * needed. Levels larger than the window are drawn through the camera, so the
+ * cost should not depend on the level size. The benchmarks must be run from the project folder so that the
+ * images in the assets folder can be found.
+ *
+ * @author prtrundl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanvasBenchmark {
+
+    /**
+     * The level number the engine is started at
+     */
+    @Param({"1", "3", "5"})
+    public int level;
+
+    /**
+     * The size of the levels in tiles, as WIDTHxHEIGHT
+     */
+    @Param({"18x9", "256x256", "2048x2048"})
+    public String map;
+
+    private Canvas canvas;
+    private BufferedImage frame;
+    private GameEngine engine;
+    private Level[] levels;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] size = map.split("x");
+        engine = new GameEngine(GameDisplay.NONE, Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        engine.startGame(level);
+        levels = new Level[]{engine.generateLevel(), engine.generateLevel()};
+        canvas = new Canvas();
+        canvas.capture(engine.getLevel(), engine.getPlayer(), engine.getCustomers(), engine.getScore());
+        canvas.present();
+        frame = new BufferedImage(GameEngine.LEVEL_WIDTH * GameGUI.TILE_WIDTH,
+                GameEngine.LEVEL_HEIGHT * GameGUI.TILE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    public BufferedImage drawLevel() {
+        Graphics2D g2 = frame.createGraphics();  //drawLevel disposes the graphics
+        canvas.drawLevel(g2);
+        return frame;
+    }
+
+    /**
+     * Switches between two levels on every call, so every tile has to be
+     * drawn into the cached background again before the frame is drawn.
+     */
+    @Benchmark
+    public BufferedImage drawNewLevel() {
+        next ^= 1;
+        canvas.capture(levels[next], engine.getPlayer(), engine.getCustomers(), engine.getScore());
+        canvas.present();
+        Graphics2D g2 = frame.createGraphics();
+        canvas.drawLevel(g2);
+        return frame;
+    }
+}
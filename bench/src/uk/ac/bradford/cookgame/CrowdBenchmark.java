@@ -0,0 +1,85 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for moving a large crowd of customers, with the parallel
+ * customer update turned off and on. The customers are put back where they
+ * started before every call, so every call moves the same crowd.
+ *
+ * @author prtrundl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrowdBenchmark {
+
+    private static final int MAP_SIZE = 1024;
+
+    /**
+     * The number of customers in the level
+     */
+    @Param({"1000", "10000", "100000"})
+    public int customers;
+
+    /**
+     * Whether the parallel customer update is turned on
+     */
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private GameEngine engine;
+    private CustomerStore store;
+    private int[] startX;
+    private int[] startY;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        engine = new GameEngine(GameDisplay.NONE, MAP_SIZE, MAP_SIZE);
+        engine.startGame();
+        engine.setParallelCustomers(parallel);
+        store = engine.getCustomers();
+        uk.ac.bradford.cookgame.Level level = engine.getLevel();
+        Player player = engine.getPlayer();
+        while (store.size() < customers) {
+            int x = random.nextInt(MAP_SIZE);
+            int y = random.nextInt(MAP_SIZE);
+            if (level.is(uk.ac.bradford.cookgame.Level.FLOOR, x, y) && store.slotAt(x, y) < 0
+                    && !(x == player.getX() && y == player.getY())) {
+                store.add(x, y, 100, 1 + random.nextInt(3));
+            }
+        }
+        startX = Arrays.copyOf(store.x, store.size());
+        startY = Arrays.copyOf(store.y, store.size());
+    }
+
+    @Setup(Level.Invocation)
+    public void resetPositions() {
+        for (int slot = 0; slot < startX.length; slot++) {
+            store.moveTo(slot, startX[slot], startY[slot]);
+        }
+    }
+
+    @Benchmark
+    public void moveAllCustomers() {
+        engine.moveAllCustomers();
+    }
+}
@@ -0,0 +1,103 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the hot paths of the GameEngine class. Each benchmark runs on
+ * a headless engine started at a range of level numbers, which controls the
+ * number of customers in the level (levelNumber * 1.5), and a range of level
+ * sizes.
+ *
+ * @author prtrundl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    /**
+     * The level number the engine is started at
+     */
+    @Param({"1", "3", "5"})
+    public int level;
+
+    /**
+     * The size of the levels in tiles, as WIDTHxHEIGHT
+     */
+    @Param({"18x9", "256x256", "2048x2048"})
+    public String map;
+
+    private static final char[] MOVES = {'U', 'D', 'L', 'R'};
+
+    private GameEngine engine;
+    private Random random;
+    private int x;
+    private int y;
+    private DistanceField tableDistances;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        String[] size = map.split("x");
+        engine = new GameEngine(GameDisplay.NONE, Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        engine.startGame(level);
+        tableDistances = new DistanceField(engine.getLevel().getWidth(), engine.getLevel().getHeight());
+    }
+
+    @Benchmark
+    public Object generateLevel() {
+        return engine.generateLevel();
+    }
+
+    @Benchmark
+    public void doTurn() {
+        engine.movePlayer(MOVES[random.nextInt(MOVES.length)]);
+        engine.doTurn();
+    }
+
+    @Benchmark
+    public void moveAllCustomers() {
+        engine.moveAllCustomers();
+    }
+
+    @Benchmark
+    public DistanceField buildTableDistances() {
+        tableDistances.build(engine.getLevel());
+        return tableDistances;
+    }
+
+    @Benchmark
+    public void isValidMove(Blackhole bh) {
+        nextCell();
+        bh.consume(engine.isValidMove(x, y, true));
+    }
+
+    /**
+     * Moves the x and y fields to the next tile in the level, so that the
+     * benchmarks visit every tile in turn.
+     */
+    private void nextCell() {
+        if (++x == engine.getLevel().getWidth()) {
+            x = 0;
+            if (++y == engine.getLevel().getHeight()) {
+                y = 0;
+            }
+        }
+    }
+}
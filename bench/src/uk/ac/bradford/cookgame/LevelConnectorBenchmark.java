@@ -0,0 +1,76 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.bradford.cookgame.GameEngine.TileType;
+
+/**
+ * Benchmarks the LevelConnector pass that generateLevel runs on every new
+ * level, on maps up to 2048x2048. Each call connects a fresh copy of the same
+ * unconnected level, shaped like a late level: a quarter walls, a few percent
+ * tables and food, and floor everywhere else. The copy is made in the
+ * benchmark so the result includes it; copyBaseline measures the copy alone.
+ *
+ * @author prtrundl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelConnectorBenchmark {
+
+    /**
+     * The size of the levels in tiles, as WIDTHxHEIGHT
+     */
+    @Param({"18x9", "256x256", "2048x2048"})
+    public String map;
+
+    private Level template;
+    private Level level;
+    private LevelConnector connector;
+
+    @Setup
+    public void setUp() {
+        String[] size = map.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        Random random = new Random(42);
+        template = new Level(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int roll = random.nextInt(100);
+                template.set(x, y, roll < 25 ? TileType.WALL : roll < 28 ? TileType.TABLE
+                        : roll < 31 ? TileType.FOOD1 : TileType.FLOOR1);
+            }
+        }
+        template.set(width - 1, 0, TileType.TRASH);
+        level = new Level(width, height);
+        connector = new LevelConnector(width, height);
+    }
+
+    @Benchmark
+    public int connect() {
+        level.copyFrom(template);
+        return connector.connect(level);
+    }
+
+    @Benchmark
+    public Level copyBaseline() {
+        level.set(0, 0, TileType.FLOOR1);   //a changed level is copied in full, as after connect
+        level.copyFrom(template);
+        return level;
+    }
+}
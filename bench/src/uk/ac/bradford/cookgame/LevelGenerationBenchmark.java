@@ -0,0 +1,59 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks GameEngine.generateLevel at the high level numbers where FLOOR1
+ * tiles get scarce, which is where a generator that retries random tiles
+ * slows down or never finishes. Each level needs one table per customer
+ * (levelNumber * 1.5) and can only put them on FLOOR1 tiles, which stop being
+ * favoured after level 6.
+ *
+ * @author prtrundl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelGenerationBenchmark {
+
+    /**
+     * The level number the levels are generated for
+     */
+    @Param({"1", "6", "12", "20", "40"})
+    public int level;
+
+    /**
+     * The size of the levels in tiles, as WIDTHxHEIGHT
+     */
+    @Param({"18x9", "256x256"})
+    public String map;
+
+    private GameEngine engine;
+
+    @Setup
+    public void setUp() {
+        EventLog.GAME.setThreshold(EventLog.Severity.WARN);
+        String[] size = map.split("x");
+        engine = new GameEngine(GameDisplay.NONE, Integer.parseInt(size[0]), Integer.parseInt(size[1]), 42);
+        engine.startGame(level);
+    }
+
+    @Benchmark
+    public Object generateLevel() {
+        return engine.generateLevel();
+    }
+}
@@ -0,0 +1,122 @@
+package uk.ac.bradford.cookgame;
+
+import java.awt.image.BufferedImage;
+import java.util.function.UnaryOperator;
+
+/**
+ * An Animation is a looping sequence of frames that have been decoded once,
+ * when the game loads, and are shown on the game's own clock. The frame to
+ * draw is worked out from the time the frame is drawn for with one division
+ * and one array lookup, so drawing an animated sprite costs the same as
+ * drawing a still image and nothing is decoded or allocated while the game
+ * runs. An Animation holds no state that changes, so one Animation can be
+ * shared by every entity that uses it, each with its own offset into the loop
+ * if they should not all move in step.
+ *
+ * Frames can be shown for different lengths of time. The loop is split into
+ * ticks as long as the greatest common divisor of the frame times, and a
+ * table holds the frame shown during each tick. A still image is an Animation
+ * with one frame.
+ *
+ * Animations are usually made from a sprite sheet by AssetAtlas.getAnimation.
+ *
+ * @author prtrundl
+ */
+class Animation {
+
+    private final BufferedImage[] frames;
+    private final int[] frameMillis;
+    private final long tickNanos;
+
+    /**
+     * The index of the frame shown during each tick of the loop
+     */
+    private final int[] ticks;
+
+    /**
+     * Creates an animation.
+     *
+     * @param frames the frames, in the order they are shown
+     * @param frameMillis how long each frame is shown for, in milliseconds,
+     * at least 1
+     */
+    Animation(BufferedImage[] frames, int[] frameMillis) {
+        if (frames.length == 0 || frames.length != frameMillis.length) {
+            throw new IllegalArgumentException("An animation needs one time for each of at least one frame");
+        }
+        this.frames = frames;
+        this.frameMillis = frameMillis;
+        int tick = 0;
+        int total = 0;
+        for (int millis : frameMillis) {
+            if (millis < 1) {
+                throw new IllegalArgumentException("Frame time must be at least 1 ms: " + millis);
+            }
+            tick = gcd(tick, millis);
+            total += millis;
+        }
+        tickNanos = tick * 1000000L;
+        ticks = new int[total / tick];
+        for (int frame = 0, next = 0; frame < frames.length; frame++) {
+            for (int t = 0; t < frameMillis[frame] / tick; t++) {
+                ticks[next++] = frame;
+            }
+        }
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    /**
+     * Returns the frame to show at a time. Any clock can be used, as long as
+     * it is the same one for every frame drawn, e.g. System.nanoTime.
+     *
+     * @param nanos the time in nanoseconds, which may be negative
+     * @return the frame
+     */
+    BufferedImage frameAt(long nanos) {
+        if (frames.length == 1) {
+            return frames[0];
+        }
+        return frames[ticks[(int) Math.floorMod(Math.floorDiv(nanos, tickNanos), (long) ticks.length)]];
+    }
+
+    /**
+     * Returns the number of frames
+     *
+     * @return the number of frames
+     */
+    int getFrameCount() {
+        return frames.length;
+    }
+
+    /**
+     * Returns the time taken to show every frame once
+     *
+     * @return the length of the loop in nanoseconds
+     */
+    long getLoopNanos() {
+        return ticks.length * tickNanos;
+    }
+
+    /**
+     * Returns an animation with the same timing and every frame converted,
+     * e.g. into a format that is faster to draw.
+     *
+     * @param convert converts one frame
+     * @return the converted animation
+     */
+    Animation map(UnaryOperator<BufferedImage> convert) {
+        BufferedImage[] converted = new BufferedImage[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            converted[i] = convert.apply(frames[i]);
+        }
+        return new Animation(converted, frameMillis);
+    }
+}
@@ -0,0 +1,329 @@
+package uk.ac.bradford.cookgame;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+/**
+ * An AssetAtlas holds all of the game's image files packed together in a
+ * single file, so they can be loaded in one read (or memory mapped) from the
+ * classpath instead of being opened one by one from a folder relative to the
+ * working directory.
+ *
+ * The atlas file format is, in big endian order:
+ * <pre>
+ * int    magic   ("CGAT")
+ * short  version (1)
+ * int    count
+ * count entries of:
+ *   short  name length, then the name as UTF-8 bytes
+ *   int    offset of the file data from the start of the data section
+ *   int    length of the file data
+ * the data section: the original bytes of each file, one after another
+ * </pre>
+ * The files are stored exactly as they are in the assets folder (PNG or GIF)
+ * and are decoded on first use, or all at once in parallel by preload. An
+ * image can also be a sprite sheet holding the frames of an animation, see
+ * getAnimation.
+ *
+ * Running this class builds an atlas from a folder of images, see main.
+ *
+ * @author prtrundl
+ */
+public class AssetAtlas {
+
+    /**
+     * The name of the atlas resource, next to this class on the classpath
+     */
+    public static final String RESOURCE = "assets.atlas";
+
+    private static final int MAGIC = 0x43474154;    //"CGAT"
+    private static final short VERSION = 1;
+
+    /**
+     * The raw bytes of each file, by name, in the order they were packed
+     */
+    private final Map<String, ByteBuffer> files;
+
+    /**
+     * Images that have been decoded so far, by name
+     */
+    private final Map<String, BufferedImage> decoded = new ConcurrentHashMap<>();
+
+    private AssetAtlas(Map<String, ByteBuffer> files) {
+        this.files = files;
+    }
+
+    /**
+     * Loads the atlas that is packed with the game, or if there is none on the
+     * classpath, the loose files in the assets folder of the working
+     * directory.
+     *
+     * @return the loaded atlas
+     * @throws IOException if neither the atlas nor the assets folder can be
+     * read
+     */
+    public static AssetAtlas load() throws IOException {
+        URL url = AssetAtlas.class.getResource(RESOURCE);
+        if (url == null) {
+            return fromDirectory(new File("assets"));
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return fromFile(new File(url.toURI()));
+            } catch (URISyntaxException e) {
+                //fall through and read it as a stream
+            }
+        }
+        try (InputStream in = url.openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+        }
+    }
+
+    /**
+     * Loads an atlas file by memory mapping it, so the operating system pages
+     * the data in as it is used.
+     *
+     * @param file the atlas file
+     * @return the loaded atlas
+     * @throws IOException if the file cannot be read or is not an atlas
+     */
+    public static AssetAtlas fromFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return fromBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the index of an atlas held in a buffer. The file data is not
+     * copied; each entry is a slice of the buffer.
+     *
+     * @param buffer the atlas bytes
+     * @return the loaded atlas
+     * @throws IOException if the buffer does not hold a valid atlas
+     */
+    static AssetAtlas fromBuffer(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 10 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not an asset atlas");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported asset atlas version " + version);
+        }
+        int count = buffer.getInt();
+        String[] names = new String[count];
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+            offsets[i] = buffer.getInt();
+            lengths[i] = buffer.getInt();
+        }
+        int dataStart = buffer.position();
+        Map<String, ByteBuffer> files = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer data = buffer.duplicate();
+            data.position(dataStart + offsets[i]);
+            data.limit(dataStart + offsets[i] + lengths[i]);
+            files.put(names[i], data.slice());
+        }
+        return new AssetAtlas(files);
+    }
+
+    /**
+     * Creates an atlas from the image files (PNG and GIF) in a folder.
+     *
+     * @param dir the folder to read
+     * @return an atlas holding every image file in the folder
+     * @throws IOException if the folder or a file cannot be read
+     */
+    public static AssetAtlas fromDirectory(File dir) throws IOException {
+        File[] list = dir.listFiles();
+        if (list == null) {
+            throw new IOException("Cannot read asset folder " + dir.getAbsolutePath());
+        }
+        Arrays.sort(list);
+        Map<String, ByteBuffer> files = new LinkedHashMap<>();
+        for (File file : list) {
+            String name = file.getName();
+            if (file.isFile() && (name.endsWith(".png") || name.endsWith(".gif"))) {
+                files.put(name, ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+            }
+        }
+        return new AssetAtlas(files);
+    }
+
+    /**
+     * Writes this atlas in the atlas file format.
+     *
+     * @param stream the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(files.size());
+        int offset = 0;
+        for (Map.Entry<String, ByteBuffer> entry : files.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeInt(offset);
+            out.writeInt(entry.getValue().remaining());
+            offset += entry.getValue().remaining();
+        }
+        for (ByteBuffer data : files.values()) {
+            out.write(bytes(data));
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns the names of the files in this atlas
+     *
+     * @return the file names, in the order they were packed
+     */
+    public List<String> getNames() {
+        return new ArrayList<>(files.keySet());
+    }
+
+    /**
+     * Returns a decoded image, decoding it the first time it is asked for.
+     *
+     * @param name the file name of the image, e.g. "wall.png"
+     * @return the decoded image
+     * @throws IOException if there is no such file or it cannot be decoded
+     */
+    public BufferedImage getImage(String name) throws IOException {
+        BufferedImage image = decoded.get(name);
+        if (image == null) {
+            image = ImageIO.read(new ByteArrayInputStream(bytes(entry(name))));
+            if (image == null) {
+                throw new IOException("Cannot decode " + name);
+            }
+            decoded.put(name, image);
+        }
+        return image;
+    }
+
+    /**
+     * Returns the animation held in a sprite sheet: a strip of square frames
+     * side by side, as high as the image, each shown for the same time. An
+     * image that is only one frame wide is an animation of one frame. The
+     * frames share the decoded image of the sheet.
+     *
+     * @param name the file name of the sprite sheet, e.g. "hammerSheet.png"
+     * @param frameMillis how long each frame is shown for, in milliseconds
+     * @return the animation
+     * @throws IOException if there is no such file or it cannot be decoded
+     */
+    Animation getAnimation(String name, int frameMillis) throws IOException {
+        BufferedImage sheet = getImage(name);
+        int size = sheet.getHeight();
+        int count = Math.max(1, sheet.getWidth() / size);
+        BufferedImage[] frames = new BufferedImage[count];
+        int[] millis = new int[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = count == 1 ? sheet : sheet.getSubimage(i * size, 0, size, size);
+            millis[i] = frameMillis;
+        }
+        return new Animation(frames, millis);
+    }
+
+    /**
+     * Decodes the given images in parallel, one task per image, so that later
+     * calls to getImage return immediately.
+     *
+     * @param names the file names of the images to decode
+     * @throws IOException if any of the images cannot be decoded
+     */
+    public void preload(String... names) throws IOException {
+        int threads = Math.max(1, Math.min(names.length, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<BufferedImage>> results = new ArrayList<>();
+            for (String name : names) {
+                results.add(pool.submit(() -> getImage(name)));
+            }
+            for (Future<BufferedImage> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private ByteBuffer entry(String name) throws IOException {
+        ByteBuffer data = files.get(name);
+        if (data == null) {
+            throw new IOException("No asset named " + name);
+        }
+        return data;
+    }
+
+    private static byte[] bytes(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Builds an atlas file from a folder of images. Run from the project
+     * folder with no arguments to rebuild the atlas that is packed with the
+     * game from the assets folder.
+     *
+     * @param args optional source folder (default assets) and output file
+     * (default src/uk/ac/bradford/cookgame/assets.atlas)
+     * @throws IOException if reading or writing fails
+     */
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : "assets");
+        File target = new File(args.length > 1 ? args[1] : "src/uk/ac/bradford/cookgame/" + RESOURCE);
+        AssetAtlas atlas = fromDirectory(dir);
+        try (OutputStream out = new FileOutputStream(target)) {
+            atlas.write(out);
+        }
+        System.out.println("Packed " + atlas.files.size() + " files into " + target
+                + " (" + target.length() + " bytes)");
+    }
+}
@@ -0,0 +1,123 @@
+package uk.ac.bradford.cookgame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The Autosaver class saves a game to a file every few turns without holding
+ * up the game thread. On the game thread it only copies the state of the game
+ * into a GameState (see GameEngine.saveState); encoding the copy and writing
+ * it to the file happens on a background thread. If the last save is still
+ * being written when the next one is due, the next one is skipped rather than
+ * waited for, so a slow disk can never stall a turn.
+ *
+ * @author prtrundl
+ */
+public class Autosaver {
+
+    /**
+     * The default number of turns between saves
+     */
+    public static final int DEFAULT_INTERVAL = 50;
+
+    private final File file;
+    private final int interval;
+
+    /**
+     * The copy of the game that is written to the file. It is only touched by
+     * the background thread while writing is true, and only by the game
+     * thread otherwise.
+     */
+    private final GameState state = new GameState();
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int lastSavedTurn;
+
+    /**
+     * Creates an Autosaver that saves every DEFAULT_INTERVAL turns.
+     *
+     * @param file the file to save to
+     */
+    public Autosaver(File file) {
+        this(file, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Creates an Autosaver.
+     *
+     * @param file the file to save to
+     * @param interval the number of turns between saves
+     */
+    public Autosaver(File file, int interval) {
+        this.file = file;
+        this.interval = interval;
+    }
+
+    /**
+     * Saves the game if at least interval turns have been played since the
+     * last save. Call on the game thread after every turn.
+     *
+     * @param engine the engine to save
+     */
+    public void afterTurn(GameEngine engine) {
+        int turn = engine.getTurnNumber();
+        if (turn - lastSavedTurn >= interval || turn < lastSavedTurn) {
+            if (saveInBackground(engine)) {
+                lastSavedTurn = turn;
+            }
+        }
+    }
+
+    /**
+     * Copies the state of the game and starts writing it to the file on the
+     * background thread. Call on the game thread, between turns.
+     *
+     * @param engine the engine to save
+     * @return true if the save was started, false if it was skipped because
+     * the last save is still being written
+     */
+    public boolean saveInBackground(GameEngine engine) {
+        if (!writing.compareAndSet(false, true)) {
+            return false;
+        }
+        engine.saveState(state);
+        writer.execute(() -> {
+            try {
+                state.write(file);
+            } catch (IOException e) {
+                System.err.println("Autosave to " + file + " failed: " + e);
+            } finally {
+                writing.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Waits for any save in progress to finish, then saves the game on the
+     * calling thread. Used when the game closes; the game thread must not be
+     * playing turns at the time.
+     *
+     * @param engine the engine to save
+     * @throws IOException if the file cannot be written
+     */
+    public void saveNow(GameEngine engine) throws IOException {
+        while (!writing.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+        try {
+            engine.saveState(state);
+            state.write(file);
+        } finally {
+            writing.set(false);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The BalanceRunner class plays many seeded headless games with a bot policy
+ * to see how a set of GameRules plays out, for tuning numbers such as the
+ * player's stamina and the customers' patience. Games are independent, so they
+ * are spread over a pool of worker threads, one per processor by default, and
+ * the results are collected into distributions of the score, the level
+ * reached and the number of customers that starved (ran out of patience
+ * without being fed) in each game.
+ *
+ * Game i of a run uses seed firstSeed + i for both the engine and the bot, so
+ * a run gives the same results every time, and runs with different rules
+ * play the same levels for as long as the rules allow.
+ *
+ * Running this class sweeps a grid of rules and prints one line per point,
+ * see main.
+ *
+ * @author prtrundl
+ */
+public class BalanceRunner {
+
+    private final ExecutorService workers;
+    private final int threads;
+    private int width = GameEngine.LEVEL_WIDTH;
+    private int height = GameEngine.LEVEL_HEIGHT;
+
+    /**
+     * Creates a runner with one worker thread per processor.
+     */
+    public BalanceRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a runner.
+     *
+     * @param threads the number of worker threads to play games on
+     */
+    public BalanceRunner(int threads) {
+        this.threads = Math.max(1, threads);
+        final AtomicInteger count = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread worker = new Thread(r, "balance-" + count.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+    }
+
+    /**
+     * Sets the size of the levels the games are played on.
+     *
+     * @param width the width of the levels in tiles
+     * @param height the height of the levels in tiles
+     */
+    public void setLevelSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Plays a number of games with one set of rules and waits for them all to
+     * finish.
+     *
+     * @param rules the rules to play with
+     * @param policy creates the bot policy for each game
+     * @param games the number of games to play
+     * @param turns the number of turns to play in each game
+     * @param firstSeed the seed of the first game
+     * @return the results of the games
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Result run(GameRules rules, Supplier<BotPolicy> policy, int games, int turns, long firstSeed)
+            throws InterruptedException {
+        return sweep(new GameRules[]{rules}, policy, games, turns, firstSeed)[0];
+    }
+
+    /**
+     * Plays a number of games with each of several sets of rules. All the
+     * games of all the rules are queued at once, so the workers are kept busy
+     * until the whole sweep is finished.
+     *
+     * @param grid the sets of rules to try
+     * @param policy creates the bot policy for each game
+     * @param games the number of games to play with each set of rules
+     * @param turns the number of turns to play in each game
+     * @param firstSeed the seed of the first game with each set of rules
+     * @return the results for each set of rules, in the same order as grid
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Result[] sweep(GameRules[] grid, final Supplier<BotPolicy> policy, int games, final int turns,
+            long firstSeed) throws InterruptedException {
+        List<List<Future<int[]>>> futures = new ArrayList<>(grid.length);
+        for (final GameRules rules : grid) {
+            List<Future<int[]>> point = new ArrayList<>(games);
+            for (int i = 0; i < games; i++) {
+                final long seed = firstSeed + i;
+                point.add(workers.submit(() -> play(rules, policy.get(), turns, seed)));
+            }
+            futures.add(point);
+        }
+        Result[] results = new Result[grid.length];
+        for (int p = 0; p < grid.length; p++) {
+            int[][] outcomes = new int[games][];
+            for (int i = 0; i < games; i++) {
+                try {
+                    outcomes[i] = futures.get(p).get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Game " + i + " with " + grid[p] + " failed", e.getCause());
+                }
+            }
+            results[p] = new Result(grid[p], outcomes);
+        }
+        return results;
+    }
+
+    /**
+     * Plays one game.
+     *
+     * @return the score, the level reached and the number of customers that
+     * starved
+     */
+    private int[] play(GameRules rules, BotPolicy policy, int turns, long seed) {
+        GameEngine engine = new GameEngine(GameDisplay.NONE, width, height, seed, rules);
+        Random random = new Random(seed);
+        engine.startGame();
+        BitSet starvedThisLevel = new BitSet();
+        int starved = 0;
+        int level = engine.getLevelNumber();
+        for (int t = 0; t < turns; t++) {
+            char move = policy.nextMove(engine, random);
+            if (move != GameLoop.NO_MOVE) {
+                engine.movePlayer(move);
+            }
+            engine.doTurn();
+            if (engine.getLevelNumber() != level) {
+                level = engine.getLevelNumber();
+                starved += starvedThisLevel.cardinality();
+                starvedThisLevel.clear();
+            }
+            CustomerStore customers = engine.getCustomers();
+            for (int slot = 0; slot < customers.size(); slot++) {
+                if (customers.getPatience(slot) == 0 && !customers.isFed(slot)) {
+                    starvedThisLevel.set(customers.getHandle(slot));
+                }
+            }
+        }
+        starved += starvedThisLevel.cardinality();
+        return new int[]{engine.getScore(), engine.getLevelNumber(), starved};
+    }
+
+    /**
+     * Shuts down the worker threads.
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * The results of the games played with one set of rules.
+     */
+    public static class Result {
+
+        private final GameRules rules;
+        private final Distribution score;
+        private final Distribution level;
+        private final Distribution starved;
+
+        Result(GameRules rules, int[][] outcomes) {
+            this.rules = rules;
+            int[][] columns = new int[3][outcomes.length];
+            for (int i = 0; i < outcomes.length; i++) {
+                for (int c = 0; c < 3; c++) {
+                    columns[c][i] = outcomes[i][c];
+                }
+            }
+            score = new Distribution(columns[0]);
+            level = new Distribution(columns[1]);
+            starved = new Distribution(columns[2]);
+        }
+
+        /**
+         * Returns the rules the games were played with
+         *
+         * @return the rules
+         */
+        public GameRules getRules() {
+            return rules;
+        }
+
+        /**
+         * Returns the distribution of the final score of each game
+         *
+         * @return the scores
+         */
+        public Distribution getScore() {
+            return score;
+        }
+
+        /**
+         * Returns the distribution of the level reached in each game
+         *
+         * @return the level numbers
+         */
+        public Distribution getLevel() {
+            return level;
+        }
+
+        /**
+         * Returns the distribution of the number of customers that starved in
+         * each game
+         *
+         * @return the starved customer counts
+         */
+        public Distribution getStarved() {
+            return starved;
+        }
+
+        @Override
+        public String toString() {
+            return rules + " | score " + score + " | level " + level + " | starved " + starved;
+        }
+    }
+
+    /**
+     * A sorted set of values, one per game, with the mean and percentiles.
+     */
+    public static class Distribution {
+
+        private final int[] values;
+
+        Distribution(int[] values) {
+            this.values = values.clone();
+            Arrays.sort(this.values);
+        }
+
+        /**
+         * Returns the mean of the values
+         *
+         * @return the mean, or 0 if there are no values
+         */
+        public double getMean() {
+            long sum = 0;
+            for (int value : values) {
+                sum += value;
+            }
+            return values.length == 0 ? 0 : (double) sum / values.length;
+        }
+
+        /**
+         * Returns a percentile of the values
+         *
+         * @param percent the percentile, from 0 (the lowest value) to 100
+         * (the highest)
+         * @return the value at that percentile, or 0 if there are no values
+         */
+        public int getPercentile(double percent) {
+            if (values.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.round(percent / 100 * (values.length - 1));
+            return values[Math.max(0, Math.min(values.length - 1, index))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mean %.1f p10 %d p50 %d p90 %d max %d", getMean(), getPercentile(10),
+                    getPercentile(50), getPercentile(90), getPercentile(100));
+        }
+    }
+
+    /**
+     * Sweeps a grid of maximum stamina, stamina for reaching a level, base
+     * patience and customers per level around the default rules and prints
+     * the results for each point.
+     *
+     * @param args optional number of games per point (default 200), number of
+     * turns per game (default 2000), bot policy ("greedy" by default, or
+     * "random") and number of worker threads (default one per processor)
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final String policy = args.length > 2 ? args[2] : "greedy";
+        BalanceRunner runner = args.length > 3 ? new BalanceRunner(Integer.parseInt(args[3])) : new BalanceRunner();
+        EventLog.GAME.setThreshold(EventLog.Severity.WARN);     //game events would bury the results
+
+        List<GameRules> grid = new ArrayList<>();
+        for (int stamina : new int[]{300, 600, 900}) {
+            for (int levelStamina : new int[]{100, 150, 200}) {
+                for (int patience : new int[]{100, 150, 200}) {
+                    for (double customers : new double[]{1.0, 1.5, 2.0}) {
+                        grid.add(GameRules.DEFAULT.withMaxStamina(stamina).withBaseLevelStamina(levelStamina)
+                                .withBasePatience(patience).withCustomersPerLevel(customers));
+                    }
+                }
+            }
+        }
+        BotPolicy.named(policy);    //fail early on a bad name
+        long start = System.nanoTime();
+        Result[] results = runner.sweep(grid.toArray(new GameRules[0]), () -> BotPolicy.named(policy), games, turns, 1);
+        long elapsed = System.nanoTime() - start;
+        runner.shutdown();
+        for (Result result : results) {
+            System.out.println(result);
+        }
+        System.out.println(grid.size() + " points x " + games + " games x " + turns + " turns with " + policy
+                + " bot on " + runner.threads + " threads in " + elapsed / 1000000 + " ms");
+    }
+}
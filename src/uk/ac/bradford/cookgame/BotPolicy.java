@@ -0,0 +1,73 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.Random;
+
+/**
+ * A BotPolicy decides the moves of a computer player, so games can be played
+ * with no one at the keyboard, e.g. by the BalanceRunner. A policy is given
+ * the engine after every turn and returns the command for the next turn.
+ *
+ * A policy object may keep state between moves, so each game should use its
+ * own policy object (see the factory methods) unless the policy is stateless
+ * like RANDOM.
+ *
+ * @author prtrundl
+ */
+public interface BotPolicy {
+
+    /**
+     * The moves a bot can make: up, down, left and right
+     */
+    char[] MOVES = {'U', 'D', 'L', 'R'};
+
+    /**
+     * A policy that makes a random move every turn.
+     */
+    BotPolicy RANDOM = new BotPolicy() {
+        @Override
+        public char nextMove(GameEngine engine, Random random) {
+            return MOVES[random.nextInt(MOVES.length)];
+        }
+    };
+
+    /**
+     * Returns a new policy that walks the shortest way to the nearest food
+     * when it has none, then to the nearest customer that wants the food it
+     * carries, or to the bin if no customer wants it. Walls are walked around
+     * rather than broken.
+     *
+     * @return a new greedy policy
+     */
+    static BotPolicy greedy() {
+        return new GreedyBot();
+    }
+
+    /**
+     * Returns the policy with the given name
+     *
+     * @param name "random" or "greedy"
+     * @return a new policy
+     * @throws IllegalArgumentException if there is no policy with that name
+     */
+    static BotPolicy named(String name) {
+        switch (name) {
+            case "random":
+                return RANDOM;
+            case "greedy":
+                return greedy();
+            default:
+                throw new IllegalArgumentException("Unknown bot policy " + name);
+        }
+    }
+
+    /**
+     * Returns the command for the next turn.
+     *
+     * @param engine the engine of the game being played, which must not be
+     * changed
+     * @param random a random number generator for the policy to use, separate
+     * from the engine's so the policy does not change how the game plays out
+     * @return U, D, L or R to move, or GameLoop.NO_MOVE to wait
+     */
+    char nextMove(GameEngine engine, Random random);
+}
@@ -0,0 +1,1067 @@
+package uk.ac.bradford.cookgame;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.Transparency;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+import uk.ac.bradford.cookgame.GameEngine.TileType;
+
+/**
+ * Internal class used to draw elements within a JPanel. The Canvas class loads
+ * images from an asset folder inside the main project folder. Levels larger
+ * than the panel are drawn through a camera that scrolls to follow the
+ * player.
+ *
+ * The Canvas is either painted by Swing, like any other JPanel, or used for
+ * active rendering by a FrameRenderer, which calls render on its own thread
+ * for every frame. With active rendering the panel itself is never shown, and
+ * the player and customers glide from tile to tile instead of jumping.
+ *
+ * @author prtrundl
+ */
+class Canvas extends JPanel {
+
+    private BufferedImage floor1;
+    private BufferedImage floor2;
+    private BufferedImage wall;
+    private BufferedImage door;
+    private BufferedImage food1;
+    private BufferedImage food2;
+    private BufferedImage food3;
+    private BufferedImage table;
+    private BufferedImage trash;
+    private BufferedImage brokenWall1;
+    private BufferedImage brokenWall2;
+
+    /**
+     * The sprites of the player, the customers and the hammer over broken
+     * walls. Each one is an Animation, decoded when the game loads, so any of
+     * them can be given more frames by replacing its image with a sprite
+     * sheet (see AssetAtlas.getAnimation). Frames are picked by the time the
+     * frame is drawn for, with customers offset by CUSTOMER_PHASE_NANOS each
+     * so they do not all move in step.
+     */
+    private static final int SHEET_FRAME_MILLIS = 100;
+    private static final int HAMMER_FRAME_MILLIS = 40;
+    private static final long CUSTOMER_PHASE_NANOS = 130000000L;
+    private Animation player;
+    private Animation playerfood1;
+    private Animation playerfood2;
+    private Animation playerfood3;
+    private Animation playerHammer;
+    private Animation customer1;
+    private Animation customer2;
+    private Animation customer3;
+    private Animation vipcustomer;
+    private Animation hammer;
+
+    /**
+     * When Swing paints the canvas, it only paints when asked to, so the
+     * tiles with animations on them are repainted this often (see
+     * startAnimating), as often as the hammer changes frame.
+     */
+    private static final int ANIMATION_REPAINT_MILLIS = HAMMER_FRAME_MILLIS;
+    private boolean entitiesAnimated;   //true if any entity sprite has more than one frame
+
+    /**
+     * One ready-to-draw image per TileType, indexed by ordinal. Each image has
+     * the floor and the tile's own image already combined, and is in a format
+     * compatible with the screen, so a tile is drawn with a single fast copy.
+     * Types with nothing to draw are null.
+     */
+    private BufferedImage[] tileSprites;
+
+    /**
+     * Copies of the game state to draw. The game thread copies each turn into
+     * pending (see capture) and the Swing thread swaps it with current before
+     * drawing (see present), so drawing never reads the live game objects.
+     * pending, pendingReady and presentQueued are guarded by this Canvas.
+     */
+    private FrameSnapshot current = new FrameSnapshot();
+    private FrameSnapshot pending = new FrameSnapshot();
+    private boolean pendingReady;
+    private boolean presentQueued;
+    private final Runnable presentTask = this::present;
+
+    /**
+     * True if frames are drawn by a FrameRenderer (see setActive). Only set
+     * before the first frame.
+     */
+    private volatile boolean active;
+
+    /**
+     * The size of the area frames are drawn into: this panel when Swing paints
+     * it, or the FrameRenderer's surface. 0 until it is known.
+     */
+    private int surfaceWidth;
+    private int surfaceHeight;
+
+    /**
+     * With active rendering, the player and customers glide to the tiles of a
+     * new snapshot over MOVE_NANOS from the time it is presented, starting
+     * from where they were being drawn at that time. The start positions, in
+     * pixels on the level, are kept by index in the current snapshot. Entities
+     * that were not in the last snapshot, or that jump by more than a tile
+     * (e.g. onto a new level), are drawn on their tiles straight away.
+     */
+    private static final long MOVE_NANOS = 90000000L;
+    private long moveStart;
+    private int[] customerFromX = new int[8];
+    private int[] customerFromY = new int[8];
+    private int playerFromX;
+    private int playerFromY;
+
+    /**
+     * Where each customer of the last snapshot was being drawn when the next
+     * one was presented, by customer handle (see CustomerStore.getHandle).
+     * Entries are only valid where seenStamp matches stamp, so the arrays
+     * never need clearing.
+     */
+    private int[] seenStamp = new int[16];
+    private int[] seenX = new int[16];
+    private int[] seenY = new int[16];
+    private int stamp;
+    private boolean playerSeen;
+    private int playerSeenX;
+    private int playerSeenY;
+
+    /**
+     * The camera shows the part of the level that fits on the screen, a
+     * viewport of viewColumns by viewRows tiles with cameraX, cameraY as its
+     * top left tile. It follows the player, scrolling only when the player
+     * gets within a quarter of the viewport of its edge. Only tiles inside
+     * the viewport are ever looked at or drawn, so drawing costs the same
+     * however large the level is.
+     */
+    private int cameraX;
+    private int cameraY;
+    private int viewColumns;
+    private int viewRows;
+
+    /**
+     * The tiles inside the viewport are drawn once into this image, which is
+     * then copied to the screen every frame. Only tiles that change are drawn
+     * into it again (see refreshBackground).
+     */
+    private BufferedImage background;
+    private Graphics2D backgroundGraphics;  //kept for as long as the image, rather than made for every update
+    private byte[] backgroundTiles; //the TileType ordinal drawn for each tile in view
+    private int backgroundX = -1;   //the camera position the background was drawn for
+    private int backgroundY = -1;
+
+    /**
+     * Viewport tile indexes (row * viewColumns + column) that entities were
+     * drawn on in the last update. These need repainting in the next update
+     * because the entities may have moved away.
+     */
+    private int[] entityTiles = new int[16];
+    private int entityTileCount;
+    private int lastScore = -1;     //the score that was last drawn
+
+    /**
+     * The score text drawn into an image, which is only drawn again when the
+     * score changes. Drawing text straight onto the Graphics of each frame
+     * makes new font objects every time, so a frame that only copies images
+     * allocates nothing (see paintComponent).
+     */
+    private final Font scoreFont = new Font("Arial", Font.BOLD, 15);
+    private BufferedImage scoreImage;
+    private int scoreImageValue = -1;
+    private int scoreAscent;
+
+    /**
+     * The rectangle the patience and stamina bars are filled with, reused for
+     * every bar.
+     */
+    private final Rectangle2D.Double bar = new Rectangle2D.Double();
+    private boolean firstFrameDrawn;    //used to report time to first frame
+
+    /**
+     * The metrics that frame times are recorded into and that the overlay
+     * shows, or null. The overlay text is only rebuilt every
+     * METRICS_REFRESH_NANOS so it costs next to nothing while it is shown.
+     */
+    private static final long METRICS_REFRESH_NANOS = 500000000L;
+    private static final int METRICS_WIDTH = 330;
+    private static final int METRICS_LINE = 15;
+    private final Font metricsFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private final Color metricsBackground = new Color(0, 0, 0, 160);
+    private volatile PerfMetrics metrics;
+    private volatile boolean metricsVisible;
+    private String[] metricsLines = new String[0];
+    private long metricsRefreshed;
+
+    /**
+     * Set when the overlay is turned on or off, so the next frame rebuilds
+     * its text. metricsRefreshed is only touched by the thread that draws the
+     * frames, which may not be the one that toggles the overlay.
+     */
+    private volatile boolean metricsStale = true;
+
+    /**
+     * Constructor that loads tile images for use in this class
+     */
+    public Canvas() {
+        loadTileImages();
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                fitTo(getWidth(), getHeight());
+            }
+        });
+    }
+
+    /**
+     * Switches this Canvas to active rendering: update no longer asks Swing
+     * to present and repaint, and frames are drawn by calling render. The
+     * repaint requests made while presenting are ignored, because the panel
+     * is never shown. Must be called before the first update.
+     */
+    void setActive() {
+        active = true;
+    }
+
+    /**
+     * Starts repainting the tiles with animations on them every
+     * ANIMATION_REPAINT_MILLIS, for when Swing paints the canvas. Not needed
+     * with active rendering, where every frame is drawn anyway.
+     */
+    void startAnimating() {
+        new Timer(ANIMATION_REPAINT_MILLIS, e -> repaintAnimatedTiles()).start();
+    }
+
+    /**
+     * Asks Swing to repaint every broken wall in view, and every entity if
+     * any of their sprites are animated. Called on the Swing thread.
+     */
+    private void repaintAnimatedTiles() {
+        if (backgroundTiles == null) {
+            return;
+        }
+        for (int k = 0; k < backgroundTiles.length; k++) {
+            if (backgroundTiles[k] == TileType.brokenWall1.ordinal() || backgroundTiles[k] == TileType.brokenWall2.ordinal()) {
+                repaintTile(k % viewColumns, k / viewColumns);
+            }
+        }
+        if (entitiesAnimated) {
+            for (int k = 0; k < entityTileCount; k++) {
+                repaintTile(entityTiles[k] % viewColumns, entityTiles[k] / viewColumns);
+            }
+        }
+    }
+
+    /**
+     * Turns the performance overlay on or off. It can only be turned on once
+     * metrics have been set.
+     */
+    void toggleMetrics() {
+        metricsVisible = !metricsVisible && metrics != null;
+        metricsStale = true;
+        repaint();
+    }
+
+    /**
+     * Sets the metrics to record frame times into and to show in the overlay.
+     *
+     * @param metrics the metrics, or null to stop recording
+     */
+    void setMetrics(PerfMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Resizes the viewport to fit the area frames are drawn into and redraws
+     * the current snapshot, used when the window is resized. Called on the
+     * thread that draws the frames.
+     *
+     * @param width the width of the area in pixels
+     * @param height the height of the area in pixels
+     */
+    void fitTo(int width, int height) {
+        surfaceWidth = width;
+        surfaceHeight = height;
+        if (current.level != null) {
+            moveCamera(current);
+            refreshBackground(current.level);
+            repaint();
+        }
+    }
+
+    /**
+     * Loads tile images from the asset atlas packed with the game (see
+     * AssetAtlas), or from the assets folder inside the project directory if
+     * there is no atlas. The images are decoded in parallel.
+     */
+    private void loadTileImages() {
+        long start = System.nanoTime();
+        try {
+            AssetAtlas atlas = AssetAtlas.load();
+            atlas.preload("tiles.png", "floor2.png", "wall.png", "player.png",
+                    "playerfood.png", "playerfood2.png", "playerfood3.png",
+                    "customer.png", "customer2.png", "customer3.png", "vipcustomer.png",
+                    "food.png", "food2.png", "food3.png", "door.png", "table.png",
+                    "trash.png", "brokenWall1.png", "brokenWall2.png", "playerHammer.png", "hammerSheet.png");
+            floor1 = tile(atlas, "tiles.png");
+            floor2 = tile(atlas, "floor2.png");
+            wall = tile(atlas, "wall.png");
+            player = sprite(atlas, "player.png");
+            playerfood1 = sprite(atlas, "playerfood.png");
+            playerfood2 = sprite(atlas, "playerfood2.png");
+            playerfood3 = sprite(atlas, "playerfood3.png");
+            customer1 = sprite(atlas, "customer.png");
+            customer2 = sprite(atlas, "customer2.png");
+            customer3 = sprite(atlas, "customer3.png");
+            vipcustomer = sprite(atlas, "vipcustomer.png");
+            food1 = tile(atlas, "food.png");
+            food2 = tile(atlas, "food2.png");
+            food3 = tile(atlas, "food3.png");
+            door = tile(atlas, "door.png");
+            table = tile(atlas, "table.png");
+            trash = tile(atlas, "trash.png");
+            brokenWall1 = tile(atlas, "brokenWall1.png");
+            brokenWall2 = tile(atlas, "brokenWall2.png");
+            playerHammer = sprite(atlas, "playerHammer.png");
+            hammer = atlas.getAnimation("hammerSheet.png", HAMMER_FRAME_MILLIS).map(Canvas::toCompatible);
+        } catch (IOException e) {
+            System.out.println("Exception loading images: " + e.getMessage());
+            e.printStackTrace(System.out);
+        }
+        for (Animation sprite : new Animation[]{player, playerfood1, playerfood2, playerfood3, playerHammer,
+            customer1, customer2, customer3, vipcustomer}) {
+            entitiesAnimated |= sprite != null && sprite.getFrameCount() > 1;
+        }
+        buildTileSprites();
+        System.out.println("Images loaded in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Gets a decoded image from the atlas and checks it is the size of a tile.
+     *
+     * @param atlas the atlas to read from
+     * @param name the file name of the image
+     * @return the decoded image
+     * @throws IOException if the image cannot be read
+     */
+    private static BufferedImage tile(AssetAtlas atlas, String name) throws IOException {
+        BufferedImage image = atlas.getImage(name);
+        assert image.getHeight() == GameGUI.TILE_HEIGHT
+                && image.getWidth() == GameGUI.TILE_WIDTH;
+        return image;
+    }
+
+    /**
+     * Gets the animation of an entity sprite from the atlas, checks its
+     * frames are the size of a tile and converts them into compatible images.
+     *
+     * @param atlas the atlas to read from
+     * @param name the file name of the image or sprite sheet
+     * @return the animation
+     * @throws IOException if the image cannot be read
+     */
+    private static Animation sprite(AssetAtlas atlas, String name) throws IOException {
+        Animation animation = atlas.getAnimation(name, SHEET_FRAME_MILLIS);
+        assert animation.frameAt(0).getHeight() == GameGUI.TILE_HEIGHT
+                && animation.frameAt(0).getWidth() == GameGUI.TILE_WIDTH;
+        return animation.map(Canvas::toCompatible);
+    }
+
+    /**
+     * Combines the floor and overlay images for each TileType into a single
+     * compatible image, filling the tileSprites array.
+     */
+    private void buildTileSprites() {
+        tileSprites = new BufferedImage[TileType.values().length];
+        tileSprites[TileType.FLOOR1.ordinal()] = composite(Transparency.OPAQUE, floor1);
+        tileSprites[TileType.FLOOR2.ordinal()] = composite(Transparency.OPAQUE, floor2);
+        tileSprites[TileType.WALL.ordinal()] = composite(Transparency.OPAQUE, floor1, wall);
+        tileSprites[TileType.FOOD1.ordinal()] = composite(Transparency.OPAQUE, floor1, food1);
+        tileSprites[TileType.FOOD2.ordinal()] = composite(Transparency.OPAQUE, floor1, food2);
+        tileSprites[TileType.FOOD3.ordinal()] = composite(Transparency.OPAQUE, floor1, food3);
+        tileSprites[TileType.DOOR.ordinal()] = composite(Transparency.OPAQUE, floor1, door);
+        tileSprites[TileType.TABLE.ordinal()] = composite(Transparency.OPAQUE, floor1, table);
+        tileSprites[TileType.TRASH.ordinal()] = composite(Transparency.OPAQUE, floor1, trash);
+        tileSprites[TileType.brokenWall1.ordinal()] = composite(Transparency.TRANSLUCENT, brokenWall1);
+        tileSprites[TileType.brokenWall2.ordinal()] = composite(Transparency.TRANSLUCENT, brokenWall2);
+    }
+
+    /**
+     * Creates a new tile sized compatible image and draws the given images
+     * into it in order.
+     *
+     * @param transparency the Transparency of the new image
+     * @param layers the images to draw, bottom first. null images are skipped
+     * @return the combined image
+     */
+    private static BufferedImage composite(int transparency, BufferedImage... layers) {
+        BufferedImage image = createCompatibleImage(GameGUI.TILE_WIDTH, GameGUI.TILE_HEIGHT, transparency);
+        Graphics2D g2 = image.createGraphics();
+        for (BufferedImage layer : layers) {
+            if (layer != null) {
+                g2.drawImage(layer, 0, 0, null);
+            }
+        }
+        g2.dispose();
+        return image;
+    }
+
+    /**
+     * Copies an image into a translucent image compatible with the screen.
+     *
+     * @param image the image to convert, may be null
+     * @return the converted image, or null if image was null
+     */
+    private static BufferedImage toCompatible(BufferedImage image) {
+        if (image == null) {
+            return null;
+        }
+        BufferedImage copy = createCompatibleImage(image.getWidth(), image.getHeight(), Transparency.TRANSLUCENT);
+        Graphics2D g2 = copy.createGraphics();
+        g2.drawImage(image, 0, 0, null);
+        g2.dispose();
+        return copy;
+    }
+
+    /**
+     * Creates an image in the format used by the screen, so that drawing it
+     * does not need any conversion and it can be accelerated. When there is no
+     * screen a plain INT RGB or ARGB image is created instead.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param transparency the Transparency of the image
+     * @return the new image
+     */
+    static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                    ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+        GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+        return config.createCompatibleImage(width, height, transparency);
+    }
+
+    /**
+     * Updates the current graphics on the screen to display the tiles, player
+     * and customers. This can be called from any thread: the state is copied
+     * straight away and the screen is updated later on the Swing thread.
+     *
+     * @param t The Level of TileTypes representing the current level of the
+     * game
+     * @param player The current player object, used to draw the player and its
+     * stamina
+     * @param customers The customers to display on the level with their
+     * patience bar
+     * @param score The score to display
+     */
+    public void update(Level t, Player player, CustomerStore customers, int score) {
+        if (capture(t, player, customers, score) && !active) {
+            EventQueue.invokeLater(presentTask);
+        }
+    }
+
+    /**
+     * Copies the game state into the pending snapshot, replacing any pending
+     * snapshot that has not been presented yet.
+     *
+     * @return true if a call to present needs to be queued, false if one is
+     * already queued
+     */
+    synchronized boolean capture(Level t, Player player, CustomerStore customers, int score) {
+        pending.capture(t, player, customers, score);
+        pendingReady = true;
+        boolean queue = !presentQueued;
+        presentQueued = true;
+        return queue;
+    }
+
+    /**
+     * Makes the latest captured snapshot the current one, brings the cached
+     * background up to date and asks Swing to repaint the parts of the screen
+     * that changed. Called on the Swing thread, or on the renderer thread with
+     * active rendering.
+     */
+    void present() {
+        present(System.nanoTime());
+    }
+
+    /**
+     * Presents the latest captured snapshot, if there is a new one.
+     *
+     * @param now the time the snapshot is first drawn, which is when its
+     * entities start gliding to their tiles
+     */
+    private void present(long now) {
+        synchronized (this) {
+            presentQueued = false;
+            if (!pendingReady) {
+                return;
+            }
+        }
+        if (active) {
+            rememberPositions(now);     //current is only swapped by this thread, so can still be read
+        }
+        synchronized (this) {
+            FrameSnapshot swap = current;
+            current = pending;
+            pending = swap;
+            pendingReady = false;
+        }
+        FrameSnapshot frame = current;
+        if (active) {
+            startMoves(frame, now);
+        }
+        if (frame.level == null) {
+            repaint();
+            return;
+        }
+        moveCamera(frame);
+        if (refreshBackground(frame.level)) {
+            repaint();      //new background, so everything is repainted
+        } else {
+            for (int k = 0; k < entityTileCount; k++) {
+                repaintTile(entityTiles[k] % viewColumns, entityTiles[k] / viewColumns);
+            }
+        }
+        entityTileCount = 0;
+        for (int c = 0; c < frame.customerCount; c++) {
+            addEntityTile(frame.customerX[c], frame.customerY[c]);
+        }
+        if (frame.hasPlayer) {
+            addEntityTile(frame.playerX, frame.playerY);
+        }
+        if (frame.score != lastScore) {
+            lastScore = frame.score;
+            repaint(0, 0, 4 * GameGUI.TILE_WIDTH, GameGUI.TILE_HEIGHT);
+        }
+        if (metricsVisible) {
+            repaint(metricsX(), 0, METRICS_WIDTH, metricsHeight());
+        }
+    }
+
+    /**
+     * Records where each entity of the current snapshot is being drawn, so
+     * that the entities of the next snapshot can glide on from there.
+     *
+     * @param now the time the next snapshot is presented
+     */
+    private void rememberPositions(long now) {
+        FrameSnapshot frame = current;
+        float progress = progress(now);
+        stamp++;
+        for (int c = 0; c < frame.customerCount; c++) {
+            int handle = frame.customerHandle[c];
+            if (handle >= seenStamp.length) {
+                int size = Math.max(handle + 1, seenStamp.length * 2);
+                seenStamp = Arrays.copyOf(seenStamp, size);
+                seenX = Arrays.copyOf(seenX, size);
+                seenY = Arrays.copyOf(seenY, size);
+            }
+            seenStamp[handle] = stamp;
+            seenX[handle] = glide(customerFromX[c], frame.customerX[c] * GameGUI.TILE_WIDTH, progress);
+            seenY[handle] = glide(customerFromY[c], frame.customerY[c] * GameGUI.TILE_HEIGHT, progress);
+        }
+        playerSeen = frame.hasPlayer;
+        playerSeenX = glide(playerFromX, frame.playerX * GameGUI.TILE_WIDTH, progress);
+        playerSeenY = glide(playerFromY, frame.playerY * GameGUI.TILE_HEIGHT, progress);
+    }
+
+    /**
+     * Sets where each entity of a newly presented snapshot glides from: where
+     * it was last drawn if it has moved by at most one tile, or its own tile.
+     *
+     * @param frame the snapshot just presented
+     * @param now the time it was presented
+     */
+    private void startMoves(FrameSnapshot frame, long now) {
+        if (frame.customerCount > customerFromX.length) {
+            int size = Math.max(frame.customerCount, customerFromX.length * 2);
+            customerFromX = new int[size];
+            customerFromY = new int[size];
+        }
+        for (int c = 0; c < frame.customerCount; c++) {
+            int handle = frame.customerHandle[c];
+            int x = frame.customerX[c] * GameGUI.TILE_WIDTH;
+            int y = frame.customerY[c] * GameGUI.TILE_HEIGHT;
+            boolean seen = handle < seenStamp.length && seenStamp[handle] == stamp;
+            customerFromX[c] = seen && nextTo(seenX[handle], seenY[handle], x, y) ? seenX[handle] : x;
+            customerFromY[c] = seen && nextTo(seenX[handle], seenY[handle], x, y) ? seenY[handle] : y;
+        }
+        int x = frame.playerX * GameGUI.TILE_WIDTH;
+        int y = frame.playerY * GameGUI.TILE_HEIGHT;
+        boolean glides = playerSeen && nextTo(playerSeenX, playerSeenY, x, y);
+        playerFromX = glides ? playerSeenX : x;
+        playerFromY = glides ? playerSeenY : y;
+        moveStart = now;
+    }
+
+    /**
+     * Returns true if a position in pixels is at most one tile away from
+     * another in each direction.
+     */
+    private static boolean nextTo(int fromX, int fromY, int x, int y) {
+        return Math.abs(x - fromX) <= GameGUI.TILE_WIDTH && Math.abs(y - fromY) <= GameGUI.TILE_HEIGHT;
+    }
+
+    /**
+     * Returns how far the entities of the current snapshot are along the way
+     * to their tiles, from 0 to 1. Always 1 unless rendering is active.
+     *
+     * @param now the time the frame is drawn for
+     */
+    private float progress(long now) {
+        if (!active || now - moveStart >= MOVE_NANOS) {
+            return 1;
+        }
+        return Math.max(0, now - moveStart) / (float) MOVE_NANOS;
+    }
+
+    /**
+     * Returns a position part of the way from one position to another.
+     */
+    private static int glide(int from, int to, float progress) {
+        return progress >= 1 ? to : from + Math.round((to - from) * progress);
+    }
+
+    /**
+     * Sizes the viewport to fit the drawing area (or the default level size
+     * if its size is not known yet) and moves the camera so the player is
+     * not too close to the edge of the viewport.
+     *
+     * @param frame the snapshot that is about to be drawn
+     */
+    private void moveCamera(FrameSnapshot frame) {
+        int width = frame.level.getWidth();
+        int height = frame.level.getHeight();
+        int columns = surfaceWidth > 0 ? (surfaceWidth + GameGUI.TILE_WIDTH - 1) / GameGUI.TILE_WIDTH : GameEngine.LEVEL_WIDTH;
+        int rows = surfaceHeight > 0 ? (surfaceHeight + GameGUI.TILE_HEIGHT - 1) / GameGUI.TILE_HEIGHT : GameEngine.LEVEL_HEIGHT;
+        viewColumns = Math.min(columns, width);
+        viewRows = Math.min(rows, height);
+        if (frame.hasPlayer) {
+            cameraX = follow(cameraX, frame.playerX, viewColumns);
+            cameraY = follow(cameraY, frame.playerY, viewRows);
+        }
+        cameraX = Math.max(0, Math.min(cameraX, width - viewColumns));
+        cameraY = Math.max(0, Math.min(cameraY, height - viewRows));
+    }
+
+    /**
+     * Moves one axis of the camera so that a position is at least a quarter of
+     * the viewport away from its edges.
+     *
+     * @param camera the current camera position
+     * @param target the position to follow
+     * @param view the size of the viewport
+     * @return the new camera position
+     */
+    private static int follow(int camera, int target, int view) {
+        int margin = view / 4;
+        if (target < camera + margin) {
+            return target - margin;
+        }
+        if (target >= camera + view - margin) {
+            return target - view + margin + 1;
+        }
+        return camera;
+    }
+
+    /**
+     * Brings the cached background image up to date with the part of a level
+     * inside the viewport. If there is no background yet, or the viewport has
+     * been resized or has scrolled, the whole background is drawn again,
+     * otherwise only tiles whose type has changed since they were last drawn
+     * are drawn again and repainted. Broken walls are always repainted because
+     * the animated hammer is drawn on top of them.
+     *
+     * @param t the level to draw
+     * @return true if the whole background was drawn again
+     */
+    private boolean refreshBackground(Level t) {
+        boolean full = background == null
+                || background.getWidth() != viewColumns * GameGUI.TILE_WIDTH
+                || background.getHeight() != viewRows * GameGUI.TILE_HEIGHT;
+        if (full) {
+            if (backgroundGraphics != null) {
+                backgroundGraphics.dispose();
+            }
+            background = createCompatibleImage(viewColumns * GameGUI.TILE_WIDTH,
+                    viewRows * GameGUI.TILE_HEIGHT, Transparency.OPAQUE);
+            backgroundGraphics = background.createGraphics();
+            backgroundTiles = new byte[viewColumns * viewRows];
+        }
+        full |= backgroundX != cameraX || backgroundY != cameraY;
+        if (full) {
+            backgroundX = cameraX;
+            backgroundY = cameraY;
+            entityTileCount = 0;
+        }
+        Graphics2D g2 = backgroundGraphics;
+        for (int j = 0; j < viewRows; j++) {
+            for (int i = 0; i < viewColumns; i++) {
+                TileType type = t.get(cameraX + i, cameraY + j);
+                byte ordinal = (byte) type.ordinal();
+                if (full || backgroundTiles[j * viewColumns + i] != ordinal) {
+                    backgroundTiles[j * viewColumns + i] = ordinal;
+                    drawTile(g2, type, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT);
+                    if (!full) {
+                        repaintTile(i, j);
+                    }
+                } else if (type == TileType.brokenWall1 || type == TileType.brokenWall2) {
+                    repaintTile(i, j);
+                }
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Records that an entity was drawn on a tile of the level and asks for the
+     * tile to be repainted, if it is inside the viewport.
+     */
+    private void addEntityTile(int x, int y) {
+        int column = x - cameraX;
+        int row = y - cameraY;
+        if (column < 0 || column >= viewColumns || row < 0 || row >= viewRows) {
+            return;
+        }
+        if (entityTileCount == entityTiles.length) {
+            entityTiles = Arrays.copyOf(entityTiles, entityTileCount * 2);
+        }
+        entityTiles[entityTileCount++] = row * viewColumns + column;
+        repaintTile(column, row);
+    }
+
+    /**
+     * Asks Swing to repaint the screen area covered by a single tile of the
+     * viewport.
+     */
+    private void repaintTile(int column, int row) {
+        repaint(column * GameGUI.TILE_WIDTH, row * GameGUI.TILE_HEIGHT, GameGUI.TILE_WIDTH, GameGUI.TILE_HEIGHT);
+    }
+
+    /**
+     * Override of method in super class, it draws the custom elements for this
+     * game such as the tiles, player and customers.
+     *
+     * @param g Graphics drawing object
+     */
+    @Override
+    public void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        if (isOpaque()) {       //as JPanel would, without the scratch Graphics it creates every time
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
+        drawLevel(g, start);
+        frameDrawn(start);
+    }
+
+    /**
+     * Draws a whole frame with active rendering: presents the latest snapshot
+     * if there is a new one, then draws it over the whole drawing area, with
+     * the entities part of the way to their tiles. Called on the renderer
+     * thread.
+     *
+     * @param g2 the Graphics of the back buffer, which is disposed
+     * @param width the width of the drawing area in pixels
+     * @param height the height of the drawing area in pixels
+     */
+    void render(Graphics2D g2, int width, int height) {
+        long start = System.nanoTime();
+        if (width != surfaceWidth || height != surfaceHeight) {
+            fitTo(width, height);
+        }
+        present(start);
+        g2.setColor(getBackground());
+        g2.fillRect(0, 0, width, height);
+        drawLevel(g2, start);
+        frameDrawn(start);
+    }
+
+    /**
+     * Records the time taken to draw a frame, and reports the time to the
+     * first frame.
+     *
+     * @param start the time drawing started
+     */
+    private void frameDrawn(long start) {
+        if (!firstFrameDrawn && current.level != null) {
+            firstFrameDrawn = true;
+            long uptime = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.out.println("First frame drawn " + uptime + " ms after JVM start");
+        }
+        PerfMetrics recorder = metrics;
+        if (recorder != null) {
+            recorder.recordFrame(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Draws graphical elements to the screen to display the current game level
+     * tiles, the player and the customers from the current snapshot. Only the
+     * part of the level inside the viewport is drawn. If the snapshot has no
+     * level, player or customers they will not be drawn.
+     *
+     * @param g
+     */
+    void drawLevel(Graphics g) {
+        drawLevel(g, System.nanoTime());
+    }
+
+    /**
+     * Draws the current snapshot, with the entities where they are at the
+     * given time (see progress), and disposes the Graphics.
+     *
+     * @param g Graphics drawing object
+     * @param now the time the frame is drawn for
+     */
+    private void drawLevel(Graphics g, long now) {
+        Graphics2D g2 = (Graphics2D) g;
+        FrameSnapshot frame = current;
+        float progress = progress(now);
+        int originX = backgroundX * GameGUI.TILE_WIDTH;
+        int originY = backgroundY * GameGUI.TILE_HEIGHT;
+        g2.translate(-originX, -originY);   //draw in level co-ordinates
+        if (frame.level != null && background != null) {
+            g2.drawImage(background, originX, originY, null);
+            BufferedImage hammerFrame = hammer == null ? null : hammer.frameAt(now);
+            for (int j = backgroundY; j < backgroundY + viewRows; j++) {
+                for (int i = backgroundX; i < backgroundX + viewColumns; i++) {
+                    if (frame.level.is(Level.BREAKABLE, i, j) && frame.level.get(i, j) != TileType.WALL) {
+                        g2.drawImage(hammerFrame, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
+                    }
+                }
+            }
+        }
+        Animation customerImage = customer1;
+        for (int c = 0; c < frame.customerCount; c++) {
+            if (!inView(frame.customerX[c], frame.customerY[c])) {
+                continue;
+            }
+            switch (frame.foodWanted[c]) {
+                case 2:
+                    customerImage = customer2;
+                    break;
+                case 3:
+                    customerImage = customer3;
+                    break;
+                case 4:
+                    customerImage = vipcustomer;
+                    break;
+                default:
+                    customerImage = customer1;
+                    break;
+            }
+            int x = frame.customerX[c] * GameGUI.TILE_WIDTH;
+            int y = frame.customerY[c] * GameGUI.TILE_HEIGHT;
+            if (progress < 1) {
+                x = glide(customerFromX[c], x, progress);
+                y = glide(customerFromY[c], y, progress);
+            }
+            drawSprite(g2, customerImage, x, y, now + frame.customerHandle[c] * CUSTOMER_PHASE_NANOS);
+            drawHealthBar(g2, x, y, frame.patience[c], frame.maxPatience[c]);
+        }
+        if (frame.hasPlayer) {
+            Animation playerImage = null;
+
+            switch (frame.carriedFood) {
+                case 0:
+                    playerImage = player;
+                    break;
+                case 1:
+                    playerImage = playerfood1;
+                    break;
+                case 2:
+                    playerImage = playerfood2;
+                    break;
+                case 3:
+                    playerImage = playerfood3;
+                    break;
+            }
+            if(frame.breaking){
+                playerImage = playerHammer;
+            }
+            int x = glide(playerFromX, frame.playerX * GameGUI.TILE_WIDTH, progress);
+            int y = glide(playerFromY, frame.playerY * GameGUI.TILE_HEIGHT, progress);
+            drawSprite(g2, playerImage, x, y, now);
+            drawEnergyBar(g2, x, y, frame.stamina, frame.maxStamina);
+        }
+        g2.translate(originX, originY);     //back to screen co-ordinates
+        if (frame.customerCount > 0) {
+            if (frame.score != scoreImageValue) {
+                drawScoreImage(frame.score);
+            }
+            g2.drawImage(scoreImage, 30, 30 - scoreAscent, null);
+        }
+        if (metricsVisible) {
+            drawMetrics(g2);
+        }
+        g2.dispose();
+    }
+
+    /**
+     * Draws the score text into scoreImage, with its baseline scoreAscent
+     * pixels from the top.
+     *
+     * @param score the score to draw
+     */
+    private void drawScoreImage(int score) {
+        String text = "Score: " + score;
+        FontMetrics fm = getFontMetrics(scoreFont);
+        scoreAscent = fm.getAscent();
+        scoreImage = createCompatibleImage(Math.max(1, fm.stringWidth(text)),
+                fm.getAscent() + fm.getDescent(), Transparency.TRANSLUCENT);
+        Graphics2D g2 = scoreImage.createGraphics();
+        g2.setColor(Color.BLUE);
+        g2.setFont(scoreFont);
+        g2.drawString(text, 0, scoreAscent);
+        g2.dispose();
+        scoreImageValue = score;
+    }
+
+    /**
+     * Draws the performance overlay in the top right corner of the panel,
+     * rebuilding its text from the metrics at most every
+     * METRICS_REFRESH_NANOS.
+     *
+     * @param g2 The graphics object to use for drawing, in screen
+     * co-ordinates
+     */
+    private void drawMetrics(Graphics2D g2) {
+        PerfMetrics source = metrics;
+        long now = System.nanoTime();
+        if (source != null && (metricsStale || now - metricsRefreshed >= METRICS_REFRESH_NANOS)) {
+            metricsStale = false;
+            metricsRefreshed = now;
+            double allocation = source.getAllocationRate();
+            metricsLines = new String[]{
+                "turn   " + source.getTurnLatency(),
+                "move   " + source.getCustomerMoveLatency(),
+                "level  " + source.getLevelGenerationLatency(),
+                "frame  " + source.getFrameTime(),
+                "jitter " + source.getFrameJitter(),
+                "moved " + source.getCustomersMoved() + "  paths " + source.getPathQueries(),
+                allocation < 0 ? "alloc  n/a" : String.format("alloc  %.1f KB/s", allocation / 1024)
+            };
+        }
+        int x = metricsX();
+        g2.setColor(metricsBackground);
+        g2.fillRect(x, 0, METRICS_WIDTH, metricsHeight());
+        g2.setColor(Color.WHITE);
+        g2.setFont(metricsFont);
+        for (int line = 0; line < metricsLines.length; line++) {
+            g2.drawString(metricsLines[line], x + 6, (line + 1) * METRICS_LINE);
+        }
+    }
+
+    /**
+     * Returns the left edge of the performance overlay
+     */
+    private int metricsX() {
+        return Math.max(0, surfaceWidth - METRICS_WIDTH);
+    }
+
+    /**
+     * Returns the height of the performance overlay
+     */
+    private int metricsHeight() {
+        return 7 * METRICS_LINE + 5;
+    }
+
+    /**
+     * Returns true if a tile of the level is inside the part of the level
+     * drawn in the background.
+     */
+    private boolean inView(int x, int y) {
+        return x >= backgroundX && x < backgroundX + viewColumns
+                && y >= backgroundY && y < backgroundY + viewRows;
+    }
+
+    /**
+     * Draws the pre-combined image for a single tile of the level.
+     *
+     * @param g2 The graphics object to use for drawing
+     * @param type The type of tile to draw
+     * @param x The X position on screen of the top left corner of the tile
+     * @param y The Y position on screen of the top left corner of the tile
+     */
+    private void drawTile(Graphics2D g2, TileType type, int x, int y) {
+        BufferedImage sprite = tileSprites[type.ordinal()];
+        if (sprite != null) {
+            g2.drawImage(sprite, x, y, null);
+        }
+    }
+
+    /**
+     * Draws the frame of an animated sprite for a time.
+     *
+     * @param g2 The graphics object to use for drawing
+     * @param sprite The sprite to draw, or null to draw nothing
+     * @param x The X position to draw at
+     * @param y The Y position to draw at
+     * @param nanos The time the frame is drawn for
+     */
+    private static void drawSprite(Graphics2D g2, Animation sprite, int x, int y, long nanos) {
+        if (sprite != null) {
+            g2.drawImage(sprite.frameAt(nanos), x, y, null);
+        }
+    }
+
+    /**
+     * Draws a patience bar for a customer at the bottom of the tile-sized
+     * area that the customer is drawn in.
+     *
+     * @param g2 The graphics object to use for drawing
+     * @param x The X position the customer is drawn at, in pixels
+     * @param y The Y position the customer is drawn at, in pixels
+     * @param patience The current patience of the customer
+     * @param maxPatience The maximum patience of the customer
+     */
+    private void drawHealthBar(Graphics2D g2, int x, int y, int patience, int maxPatience) {
+        double remainingPatience = (double) patience / (double) maxPatience;
+        int barY = y + 60; // Adjust the Y position
+
+        g2.setColor(Color.RED);
+        bar.setRect(x, barY, GameGUI.TILE_WIDTH, GameGUI.BAR_HEIGHT);
+        g2.fill(bar);
+        g2.setColor(Color.GREEN);
+        bar.setRect(x, barY, GameGUI.TILE_WIDTH * remainingPatience, GameGUI.BAR_HEIGHT);
+        g2.fill(bar);
+    }
+
+    /**
+     * Draws an energy bar for the player at the bottom of the tile-sized area
+     * that the player is drawn in.
+     *
+     * @param g2 The graphics object to use for drawing
+     * @param x The X position the player is drawn at, in pixels
+     * @param y The Y position the player is drawn at, in pixels
+     * @param stamina The current stamina of the player
+     * @param maxStamina The maximum stamina of the player
+     */
+    private void drawEnergyBar(Graphics2D g2, int x, int y, int stamina, int maxStamina) {
+        double remainingStamina = (double) stamina / (double) maxStamina;
+        int barY = y + 55; // Adjust the Y position
+
+        g2.setColor(Color.BLUE);
+        bar.setRect(x, barY, GameGUI.TILE_WIDTH, GameGUI.BAR_HEIGHT);
+        g2.fill(bar);
+        g2.setColor(Color.CYAN);
+        bar.setRect(x, barY, GameGUI.TILE_WIDTH * remainingStamina, GameGUI.BAR_HEIGHT);
+        g2.fill(bar);
+    }
+}
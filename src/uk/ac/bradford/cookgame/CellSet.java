@@ -0,0 +1,177 @@
+package uk.ac.bradford.cookgame;
+
+/**
+ * A CellSet is a set of tiles of a level, such as the free floor tiles where
+ * the player, customers and new food can be put. Each tile is stored as one
+ * int, y * width + x, see cellOf.
+ *
+ * The tiles in the set are kept packed together at the start of one array,
+ * and a second array holds the position of every tile of the level in the
+ * first (or nothing if the tile is not in the set). Adding, removing, checking
+ * for and picking a random tile all take the same time however big the set
+ * is, a tile can only be in the set once, and the memory used is fixed by the
+ * size of the level. Removing a tile moves the last tile in the set into its
+ * place, so the order of the tiles changes, but always in the same way for
+ * the same calls.
+ *
+ * @author prtrundl
+ */
+class CellSet {
+
+    private final int width;
+
+    /**
+     * The tiles in the set. Only the first size entries are used.
+     */
+    private final int[] cells;
+
+    /**
+     * The position in cells of each tile of the level plus one, or 0 if the
+     * tile is not in the set
+     */
+    private final int[] slots;
+
+    private int size;
+
+    /**
+     * Creates an empty set for a level of the given size
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     */
+    CellSet(int width, int height) {
+        this.width = width;
+        cells = new int[width * height];
+        slots = new int[width * height];
+    }
+
+    /**
+     * Returns the cell for a tile
+     *
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     * @return the cell
+     */
+    int cellOf(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * Returns the X position of a cell
+     *
+     * @param cell the cell
+     * @return the X position of the tile
+     */
+    int xOf(int cell) {
+        return cell % width;
+    }
+
+    /**
+     * Returns the Y position of a cell
+     *
+     * @param cell the cell
+     * @return the Y position of the tile
+     */
+    int yOf(int cell) {
+        return cell / width;
+    }
+
+    /**
+     * Adds a tile to the set
+     *
+     * @param cell the tile to add
+     * @return true if the tile was added, false if it was already in the set
+     */
+    boolean add(int cell) {
+        if (slots[cell] != 0) {
+            return false;
+        }
+        cells[size++] = cell;
+        slots[cell] = size;
+        return true;
+    }
+
+    /**
+     * Removes a tile from the set
+     *
+     * @param cell the tile to remove
+     * @return true if the tile was removed, false if it was not in the set
+     */
+    boolean remove(int cell) {
+        int slot = slots[cell] - 1;
+        if (slot < 0) {
+            return false;
+        }
+        int last = cells[--size];
+        cells[slot] = last;
+        slots[last] = slot + 1;
+        slots[cell] = 0;
+        return true;
+    }
+
+    /**
+     * Returns true if a tile is in the set
+     *
+     * @param cell the tile
+     * @return true if the tile is in the set
+     */
+    boolean contains(int cell) {
+        return slots[cell] != 0;
+    }
+
+    /**
+     * Returns a random tile from the set, every tile being equally likely,
+     * without removing it
+     *
+     * @param random the random number generator to use
+     * @return the tile, or -1 if the set is empty
+     */
+    int sample(GameRandom random) {
+        return size == 0 ? -1 : cells[random.nextInt(size)];
+    }
+
+    /**
+     * Removes a random tile from the set, every tile being equally likely
+     *
+     * @param random the random number generator to use
+     * @return the tile removed, or -1 if the set is empty
+     */
+    int removeRandom(GameRandom random) {
+        int cell = sample(random);
+        if (cell >= 0) {
+            remove(cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Returns a tile by its position in the set. The tiles are at positions 0
+     * to size() - 1, in an order that only depends on the calls made to the
+     * set, so adding them to an empty set in that order gives an identical
+     * set.
+     *
+     * @param index the position, from 0 to size() - 1
+     * @return the tile at that position
+     */
+    int get(int index) {
+        return cells[index];
+    }
+
+    /**
+     * Returns the number of tiles in the set
+     *
+     * @return the number of tiles
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the set has no tiles
+     *
+     * @return true if the set is empty
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
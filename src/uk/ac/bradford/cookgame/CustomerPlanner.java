@@ -0,0 +1,277 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The CustomerPlanner class moves customers in two steps. First every
+ * customer plans its move on its own: it lists the neighbouring tiles it
+ * would like to step to, best first, looking only at the tiles of the level,
+ * the table distance field and the player. Then the moves are applied one
+ * customer at a time in slot order, each customer taking the first tile on
+ * its list that no other customer is standing on at that moment.
+ *
+ * Planning reads nothing that another customer's plan can change, so it can
+ * be split over several threads (see moveAll), while applying the moves in
+ * slot order gives exactly the same result as moving the customers one by one
+ * on a single thread. Applying a move only looks at a few tiles of the
+ * OccupancyGrid, so almost all of the work is in planning.
+ *
+ * @author prtrundl
+ */
+class CustomerPlanner {
+
+    /**
+     * The number of customers at which moveAll and reduceAllPatience split
+     * the customers over several threads
+     */
+    static final int PARALLEL_THRESHOLD = 2048;
+
+    /**
+     * The number of customers planned by one fork/join task
+     */
+    private static final int TASK_SIZE = 1024;
+
+    /**
+     * Steps to the tiles above, below, left and right of a customer, in the
+     * order they are checked. Ties between equally good tiles go to the one
+     * checked first.
+     */
+    private static final int[] DX = {0, 0, -1, 1};
+    private static final int[] DY = {-1, 1, 0, 0};
+
+    private final DistanceField distances;
+    private final CustomerStore customers;
+    private final OccupancyGrid occupancy;
+    private Level level;
+    private int playerX;
+    private int playerY;
+
+    /**
+     * The planned steps of each customer, by slot: moveCount[slot] entries
+     * starting at moves[slot * 4], each an index into DX and DY, best first.
+     * moveCount[slot] is -1 for a customer that did not look for a way to a
+     * table at all, e.g. because it is close to the player.
+     */
+    private byte[] moves = new byte[4 * 64];
+    private byte[] moveCount = new byte[64];
+    private int queries;    //the number of customers that looked for a way in the last moveAll
+
+    /**
+     * Creates a planner for the customers of one engine.
+     *
+     * @param distances the table distance field, which must be up to date
+     * with the level whenever customers are moved
+     * @param customers the customers to move
+     * @param occupancy the grid the customers are kept in
+     */
+    CustomerPlanner(DistanceField distances, CustomerStore customers, OccupancyGrid occupancy) {
+        this.distances = distances;
+        this.customers = customers;
+        this.occupancy = occupancy;
+    }
+
+    /**
+     * Moves every customer that is not close to the player and not already
+     * next to a table one step towards the nearest table.
+     *
+     * @param tiles the current level
+     * @param px the X position of the player
+     * @param py the Y position of the player
+     * @param parallel true to plan the moves on several threads when there
+     * are at least PARALLEL_THRESHOLD customers
+     * @return the number of customers that moved
+     */
+    int moveAll(Level tiles, int px, int py, boolean parallel) {
+        level = tiles;
+        playerX = px;
+        playerY = py;
+        int count = customers.size();
+        if (moveCount.length < count) {
+            moveCount = new byte[Math.max(count, moveCount.length * 2)];
+            moves = new byte[4 * moveCount.length];
+        }
+        int moved = 0;
+        queries = 0;
+        if (parallel && count >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new Range(this, false, 0, count));
+            for (int slot = 0; slot < count; slot++) {
+                if (apply(slot)) {
+                    moved++;
+                }
+            }
+        } else {
+            for (int slot = 0; slot < count; slot++) {
+                plan(slot);
+                if (apply(slot)) {
+                    moved++;
+                }
+            }
+        }
+        for (int slot = 0; slot < count; slot++) {
+            if (moveCount[slot] >= 0) {
+                queries++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Returns the number of customers that looked up their way to a table in
+     * the table distance field during the last call to moveAll. Customers
+     * close to the player or already next to a table do not look.
+     *
+     * @return the number of lookups
+     */
+    int getQueries() {
+        return queries;
+    }
+
+    /**
+     * Reduces the patience of every customer, by 1 for customers next to a
+     * table and by 3 for all others.
+     *
+     * @param tiles the current level
+     * @param parallel true to split the work over several threads when there
+     * are at least PARALLEL_THRESHOLD customers
+     */
+    void reduceAllPatience(Level tiles, boolean parallel) {
+        level = tiles;
+        int count = customers.size();
+        if (parallel && count >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new Range(this, true, 0, count));
+        } else {
+            reducePatience(0, count);
+        }
+    }
+
+    /**
+     * Lists the tiles a customer would like to step to, best first. Only
+     * tiles closer to a table than the customer's own tile are listed, and
+     * nothing is listed for customers close to the player or next to a table.
+     *
+     * @param slot the slot of the customer
+     */
+    private void plan(int slot) {
+        int x = customers.getX(slot);
+        int y = customers.getY(slot);
+        if (nearPlayer(x, y) || nextToTable(x, y)) {
+            moveCount[slot] = -1;
+            return;
+        }
+        int count = 0;
+        int own = distances.get(x, y);
+        int base = slot * 4;
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            int dist = distances.get(nx, ny);
+            if (dist < own && canEnter(nx, ny)) {
+                int k = count++;    //insertion sort, keeping earlier directions first on ties
+                while (k > 0 && distances.get(x + DX[moves[base + k - 1]], y + DY[moves[base + k - 1]]) > dist) {
+                    moves[base + k] = moves[base + k - 1];
+                    k--;
+                }
+                moves[base + k] = (byte) d;
+            }
+        }
+        moveCount[slot] = (byte) count;
+    }
+
+    /**
+     * Moves a customer to the first tile in its plan that is free.
+     *
+     * @param slot the slot of the customer
+     * @return true if the customer moved
+     */
+    private boolean apply(int slot) {
+        int x = customers.getX(slot);
+        int y = customers.getY(slot);
+        int base = slot * 4;
+        for (int k = 0; k < moveCount[slot]; k++) {
+            int nx = x + DX[moves[base + k]];
+            int ny = y + DY[moves[base + k]];
+            if (!occupancy.isOccupied(nx, ny)) {
+                customers.moveTo(slot, nx, ny);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void planRange(int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            plan(slot);
+        }
+    }
+
+    private void reducePatience(int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            if (nextToTable(customers.getX(slot), customers.getY(slot))) {
+                customers.changePatience(slot, -1);
+            } else {
+                customers.changePatience(slot, -3);
+            }
+        }
+    }
+
+    /**
+     * Returns true if a customer could step onto a tile if no other customer
+     * is standing on it: the tile is inside the level, is not a wall, table or
+     * food, and the player is not on it.
+     */
+    private boolean canEnter(int x, int y) {
+        return level.contains(x, y)
+                && !level.is(Level.BLOCKING, x, y)
+                && !level.is(Level.FOOD, x, y)
+                && !(x == playerX && y == playerY);
+    }
+
+    /**
+     * Returns true if a position is within 2 tiles of the player in both
+     * directions. Customers that close to the player wait for their food.
+     */
+    private boolean nearPlayer(int x, int y) {
+        return Math.abs(playerX - x) < 3 && Math.abs(playerY - y) < 3;
+    }
+
+    private boolean nextToTable(int x, int y) {
+        return level.is(Level.TABLE, x - 1, y) || level.is(Level.TABLE, x + 1, y)
+                || level.is(Level.TABLE, x, y - 1) || level.is(Level.TABLE, x, y + 1);
+    }
+
+    /**
+     * A fork/join task that plans moves or reduces patience for a range of
+     * slots, splitting the range in half until it is at most TASK_SIZE slots.
+     */
+    private static class Range extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CustomerPlanner planner;
+        private final boolean patience;
+        private final int from;
+        private final int to;
+
+        Range(CustomerPlanner planner, boolean patience, int from, int to) {
+            this.planner = planner;
+            this.patience = patience;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                if (patience) {
+                    planner.reducePatience(from, to);
+                } else {
+                    planner.planRange(from, to);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Range(planner, patience, from, middle), new Range(planner, patience, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.Arrays;
+
+/**
+ * The CustomerStore class holds every customer in the current level. Instead
+ * of an object per customer, the state of the customers is kept in
+ * parallel arrays (one for X positions, one for Y positions, one for patience
+ * and so on), and the customers are always packed at the start of the arrays.
+ * The customer in slot i is made up of x[i], y[i], patience[i] etc., so
+ * looping over every customer is a loop from 0 to size() with no null
+ * elements to skip and no objects to follow.
+ *
+ * When a customer is removed the last customer is moved into its slot, so a
+ * customer's slot can change. Every customer is also given a handle when it
+ * is added, which stays the same until the customer is removed or the store
+ * is cleared, so the renderer can follow a customer from frame to frame.
+ *
+ * The store keeps an OccupancyGrid up to date with the position of every
+ * customer, using handle + 1 as the id on the grid.
+ *
+ * @author prtrundl
+ */
+public class CustomerStore {
+
+    /**
+     * The state of a customer that is still waiting for food
+     */
+    static final byte WAITING = 0;
+
+    /**
+     * The state of a customer that has been given the food they wanted
+     */
+    static final byte FED = 1;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * The number of customers in the store, which are in slots 0 to count - 1
+     */
+    private int count;
+
+    /**
+     * The state of each customer, by slot. Read directly by FrameSnapshot.
+     */
+    int[] x = new int[INITIAL_CAPACITY];
+    int[] y = new int[INITIAL_CAPACITY];
+    int[] patience = new int[INITIAL_CAPACITY];
+    int[] maxPatience = new int[INITIAL_CAPACITY];
+    int[] foodWanted = new int[INITIAL_CAPACITY];
+    byte[] state = new byte[INITIAL_CAPACITY];
+    int[] handles = new int[INITIAL_CAPACITY];
+
+    /**
+     * The slot of each customer, by handle, or -1 for handles of customers
+     * that have been removed.
+     */
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private int nextHandle;
+
+    private final OccupancyGrid grid;
+
+    /**
+     * Creates an empty CustomerStore.
+     *
+     * @param grid the OccupancyGrid to keep up to date with the positions of
+     * the customers
+     */
+    CustomerStore(OccupancyGrid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Returns the number of customers in the store
+     *
+     * @return the number of customers, which are in slots 0 to size() - 1
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the X position of a customer
+     *
+     * @param slot the slot of the customer
+     * @return the X position of the customer in the level
+     */
+    public int getX(int slot) {
+        return x[slot];
+    }
+
+    /**
+     * Returns the Y position of a customer
+     *
+     * @param slot the slot of the customer
+     * @return the Y position of the customer in the level
+     */
+    public int getY(int slot) {
+        return y[slot];
+    }
+
+    /**
+     * Returns the current patience of a customer
+     *
+     * @param slot the slot of the customer
+     * @return the current patience of the customer
+     */
+    public int getPatience(int slot) {
+        return patience[slot];
+    }
+
+    /**
+     * Returns the maximum patience of a customer
+     *
+     * @param slot the slot of the customer
+     * @return the maximum patience of the customer
+     */
+    public int getMaxPatience(int slot) {
+        return maxPatience[slot];
+    }
+
+    /**
+     * Returns the type of food a customer wants
+     *
+     * @param slot the slot of the customer
+     * @return 1 for red food, 2 for green food, 3 for brown food
+     */
+    public int getFoodWanted(int slot) {
+        return foodWanted[slot];
+    }
+
+    /**
+     * Returns true if a customer has been given the food they wanted
+     *
+     * @param slot the slot of the customer
+     * @return true if the customer has been fed
+     */
+    public boolean isFed(int slot) {
+        return state[slot] == FED;
+    }
+
+    /**
+     * Returns the handle of a customer
+     *
+     * @param slot the slot of the customer
+     * @return the handle of the customer, which does not change when other
+     * customers are removed
+     */
+    public int getHandle(int slot) {
+        return handles[slot];
+    }
+
+    /**
+     * Returns the current slot of a customer
+     *
+     * @param handle the handle of the customer
+     * @return the slot of the customer, or -1 if the customer has been removed
+     */
+    public int slotOf(int handle) {
+        return handle >= 0 && handle < nextHandle ? slots[handle] : -1;
+    }
+
+    /**
+     * Returns the slot of the customer standing on a tile
+     *
+     * @param tileX the X position of the tile
+     * @param tileY the Y position of the tile
+     * @return the slot of the customer on the tile, or -1 if there is none
+     */
+    int slotAt(int tileX, int tileY) {
+        int id = grid.get(tileX, tileY);
+        return id == OccupancyGrid.EMPTY ? -1 : slots[id - 1];
+    }
+
+    /**
+     * Adds a customer with full patience to the store.
+     *
+     * @param tileX the X position of the customer in the level
+     * @param tileY the Y position of the customer in the level
+     * @param max the maximum patience of the customer, also used as its
+     * starting patience
+     * @param foodType the type of food the customer wants (1 is red food, 2 is
+     * green food and 3 is brown food). Passing any other value will set the
+     * customer's wanted food type to 1 (red food).
+     * @return the handle of the new customer
+     */
+    int add(int tileX, int tileY, int max, int foodType) {
+        if (count == x.length) {
+            int size = count * 2;
+            x = Arrays.copyOf(x, size);
+            y = Arrays.copyOf(y, size);
+            patience = Arrays.copyOf(patience, size);
+            maxPatience = Arrays.copyOf(maxPatience, size);
+            foodWanted = Arrays.copyOf(foodWanted, size);
+            state = Arrays.copyOf(state, size);
+            handles = Arrays.copyOf(handles, size);
+        }
+        if (nextHandle == slots.length) {
+            slots = Arrays.copyOf(slots, nextHandle * 2);
+        }
+        if (foodType < 1 || foodType > 3) {
+            foodType = 1;
+        }
+        int handle = nextHandle++;
+        int slot = count++;
+        x[slot] = tileX;
+        y[slot] = tileY;
+        patience[slot] = max;
+        maxPatience[slot] = max;
+        foodWanted[slot] = foodType;
+        state[slot] = WAITING;
+        handles[slot] = handle;
+        slots[handle] = slot;
+        grid.place(handle + 1, tileX, tileY);
+        return handle;
+    }
+
+    /**
+     * Moves a customer to a new position, updating the OccupancyGrid.
+     *
+     * @param slot the slot of the customer
+     * @param tileX the new X position
+     * @param tileY the new Y position
+     */
+    void moveTo(int slot, int tileX, int tileY) {
+        int id = handles[slot] + 1;
+        grid.remove(id, x[slot], y[slot]);
+        grid.place(id, tileX, tileY);
+        x[slot] = tileX;
+        y[slot] = tileY;
+    }
+
+    /**
+     * Changes the patience of a customer, keeping it between 0 and the
+     * customer's maximum patience.
+     *
+     * @param slot the slot of the customer
+     * @param change the change in patience, negative to reduce it
+     */
+    void changePatience(int slot, int change) {
+        int value = patience[slot] + change;
+        if (value > maxPatience[slot]) {
+            value = maxPatience[slot];
+        }
+        if (value < 0) {
+            value = 0;
+        }
+        patience[slot] = value;
+    }
+
+    /**
+     * Marks a customer as having been given the food they wanted.
+     *
+     * @param slot the slot of the customer
+     */
+    void feed(int slot) {
+        state[slot] = FED;
+    }
+
+    /**
+     * Removes a customer, moving the last customer into its slot.
+     *
+     * @param slot the slot of the customer to remove
+     */
+    void removeAt(int slot) {
+        int handle = handles[slot];
+        grid.remove(handle + 1, x[slot], y[slot]);
+        slots[handle] = -1;
+        int last = --count;
+        if (slot != last) {
+            x[slot] = x[last];
+            y[slot] = y[last];
+            patience[slot] = patience[last];
+            maxPatience[slot] = maxPatience[last];
+            foodWanted[slot] = foodWanted[last];
+            state[slot] = state[last];
+            handles[slot] = handles[last];
+            slots[handles[slot]] = slot;
+        }
+    }
+
+    /**
+     * Removes every customer that has been fed.
+     *
+     * @return the number of customers removed
+     */
+    int removeFed() {
+        int removed = 0;
+        for (int slot = count - 1; slot >= 0; slot--) {
+            if (state[slot] == FED) {
+                removeAt(slot);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns true if every customer in the store has been fed, or the store
+     * is empty
+     *
+     * @return true if no customer is still waiting for food
+     */
+    boolean allFed() {
+        for (int slot = 0; slot < count; slot++) {
+            if (state[slot] != FED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes every customer and starts handing out handles from 0 again. The
+     * OccupancyGrid is not changed; it should be cleared as well when a new
+     * level is created.
+     */
+    void clear() {
+        count = 0;
+        nextHandle = 0;
+    }
+}
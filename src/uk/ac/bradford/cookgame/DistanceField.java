@@ -0,0 +1,154 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.Arrays;
+
+/**
+ * A DistanceField stores, for every tile in a level, the number of steps a
+ * customer needs to take to reach a tile next to a table. It is built with a
+ * single breadth first search that starts from every table at once, so one
+ * build answers the question for all customers. A customer can then find its
+ * next move by stepping to the neighbouring tile with the smallest distance,
+ * which routes it around walls instead of getting stuck behind them.
+ *
+ * The field only depends on the tiles of the level, so the GameEngine only
+ * rebuilds it when a tile changes. Rebuilding visits every tile of the level,
+ * so the common case of a single tile becoming walkable (food picked up or a
+ * wall broken) is handled by open instead, which only visits the tiles whose
+ * distance gets shorter.
+ *
+ * @author prtrundl
+ */
+class DistanceField {
+
+    /**
+     * The distance stored for tiles that cannot reach any table
+     */
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int width;
+    private final int height;
+
+    /**
+     * Distance for each tile, indexed by y * width + x
+     */
+    private final int[] distance;
+
+    /**
+     * Queue of tile indexes used by the breadth first searches. Each tile is
+     * added at most once per search so the queue never needs to grow.
+     */
+    private final int[] queue;
+
+    /**
+     * Creates an empty DistanceField for a level of the given size
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     */
+    DistanceField(int width, int height) {
+        this.width = width;
+        this.height = height;
+        distance = new int[width * height];
+        queue = new int[width * height];
+    }
+
+    /**
+     * Rebuilds the field for the given level. Tables are the sources of the
+     * search (distance 0) and the search spreads through tiles that customers
+     * can walk on.
+     *
+     * @param level the level to build the field for
+     */
+    void build(Level level) {
+        int head = 0;
+        int tail = 0;
+        Arrays.fill(distance, UNREACHABLE);
+        for (int t = level.next(Level.TABLE, 0); t >= 0; t = level.next(Level.TABLE, t + 1)) {
+            int i = level.yOf(t) * width + level.xOf(t);
+            distance[i] = 0;
+            queue[tail++] = i;
+        }
+        spread(level, head, tail);
+    }
+
+    /**
+     * Updates the field after a single tile that customers could not walk on
+     * has become walkable. A new walkable tile can only make paths shorter, so
+     * the search starts from that tile and stops at tiles whose distance does
+     * not improve. The tile must not have been a table.
+     *
+     * @param level the level the field was built for, with the tile already
+     * changed
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     */
+    void open(Level level, int x, int y) {
+        int best = Math.min(Math.min(get(x - 1, y), get(x + 1, y)), Math.min(get(x, y - 1), get(x, y + 1)));
+        if (best == UNREACHABLE) {
+            return;     //no table can be reached through this tile yet
+        }
+        int i = y * width + x;
+        distance[i] = best + 1;
+        queue[0] = i;
+        spread(level, 0, 1);
+    }
+
+    /**
+     * Runs the breadth first search from the tiles in the queue, setting the
+     * distance of every walkable tile that can be reached in fewer steps than
+     * its current distance.
+     *
+     * @param head the index of the first tile in the queue
+     * @param tail the index after the last tile in the queue
+     */
+    private void spread(Level level, int head, int tail) {
+        while (head < tail) {
+            int i = queue[head++];
+            int x = i % width;
+            int y = i / width;
+            int next = distance[i] + 1;
+            if (x > 0 && visit(level, x - 1, y, next)) {
+                queue[tail++] = i - 1;
+            }
+            if (x < width - 1 && visit(level, x + 1, y, next)) {
+                queue[tail++] = i + 1;
+            }
+            if (y > 0 && visit(level, x, y - 1, next)) {
+                queue[tail++] = i - width;
+            }
+            if (y < height - 1 && visit(level, x, y + 1, next)) {
+                queue[tail++] = i + width;
+            }
+        }
+    }
+
+    /**
+     * Sets the distance of a tile if a customer can walk on it and it has not
+     * been reached in as few steps yet.
+     *
+     * @return true if the distance of the tile was changed
+     */
+    private boolean visit(Level level, int x, int y, int d) {
+        int i = y * width + x;
+        if (distance[i] <= d || !level.is(Level.WALKABLE, x, y)) {
+            return false;
+        }
+        distance[i] = d;
+        return true;
+    }
+
+    /**
+     * Returns the distance from a tile to the nearest table
+     *
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     * @return the number of steps to a table, or UNREACHABLE if the tile is
+     * outside the level or no table can be reached from it
+     */
+    int get(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return UNREACHABLE;
+        }
+        return distance[y * width + x];
+    }
+}
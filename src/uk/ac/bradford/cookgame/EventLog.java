@@ -0,0 +1,245 @@
+package uk.ac.bradford.cookgame;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The EventLog class records things that happen in the game (an Event and up
+ * to three int values) without slowing down the turn that caused them.
+ * Recording an event only copies the values into a preallocated ring buffer;
+ * a background thread formats the events and writes them out. Each Event has
+ * a Severity, and events below the threshold of the log are ignored after a
+ * single comparison, so leaving DEBUG events in the turn code costs almost
+ * nothing when they are turned off.
+ *
+ * If the game records events faster than they can be written, the buffer
+ * fills up and new events are dropped (and counted) instead of making the
+ * game wait.
+ *
+ * GAME is the log used by the GameEngine, writing to the standard output.
+ *
+ * @author prtrundl
+ */
+public class EventLog {
+
+    /**
+     * How important an event is, from least to most important
+     */
+    public enum Severity {
+        DEBUG, INFO, WARN, OFF
+    }
+
+    /**
+     * The events the game records, each with its Severity and the format of
+     * its message (see String.format) for the values recorded with it.
+     */
+    public enum Event {
+        LEVEL_STARTED(Severity.INFO, "Level %d, total score: %d"),
+        FOOD_DELIVERED(Severity.INFO, "Turn %d: food delivered, score: %d"),
+        WALL_HIT(Severity.DEBUG, "Turn %d: breaking wall at %d,%d"),
+        WALL_BROKEN(Severity.DEBUG, "Turn %d: broke through wall at %d,%d");
+
+        private final Severity severity;
+        private final String format;
+
+        Event(Severity severity, String format) {
+            this.severity = severity;
+            this.format = format;
+        }
+
+        /**
+         * Returns the severity of this event
+         *
+         * @return the severity
+         */
+        public Severity getSeverity() {
+            return severity;
+        }
+    }
+
+    /**
+     * The log used by the game
+     */
+    public static final EventLog GAME = new EventLog(System.out, 8192, Severity.INFO);
+
+    /**
+     * How long the writer sleeps when there is nothing to write
+     */
+    private static final long IDLE_NANOS = 10000000L;
+
+    private final PrintStream out;
+    private final int mask;
+    private volatile int threshold;
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * The ring buffer: slot s holds the event with sequence number seq where
+     * seq & mask == s. sequences[s] is set to seq + 1 once the slot has been
+     * filled, which is what the writer waits for.
+     */
+    private final long[] times;
+    private final Event[] events;
+    private final int[] first;
+    private final int[] second;
+    private final int[] third;
+    private final AtomicLongArray sequences;
+
+    /**
+     * The sequence number of the next event to be recorded, and of the next
+     * event to be written
+     */
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+
+    /**
+     * Creates a log and starts its writer thread.
+     *
+     * @param out the stream to write events to
+     * @param capacity the number of events the buffer holds, rounded up to a
+     * power of two
+     * @param threshold the least important Severity that is recorded
+     */
+    public EventLog(PrintStream out, int capacity, Severity threshold) {
+        this.out = out;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        times = new long[size];
+        events = new Event[size];
+        first = new int[size];
+        second = new int[size];
+        third = new int[size];
+        sequences = new AtomicLongArray(size);
+        this.threshold = threshold.ordinal();
+        writer = new Thread(this::writeLoop, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "event-log-flush"));
+    }
+
+    /**
+     * Sets the least important Severity that is recorded. Events below it are
+     * ignored; OFF turns the log off.
+     *
+     * @param severity the new threshold
+     */
+    public void setThreshold(Severity severity) {
+        threshold = severity.ordinal();
+    }
+
+    /**
+     * Returns true if events of a Severity are recorded. Only needed around
+     * code that does extra work to find the values to record.
+     *
+     * @param severity the severity to check
+     * @return true if events of that severity are recorded
+     */
+    public boolean isEnabled(Severity severity) {
+        return severity.ordinal() >= threshold;
+    }
+
+    /**
+     * Records an event with no values.
+     *
+     * @param event the event
+     */
+    public void log(Event event) {
+        log(event, 0, 0, 0);
+    }
+
+    /**
+     * Records an event with one value.
+     *
+     * @param event the event
+     * @param a the value for the event's message
+     */
+    public void log(Event event, int a) {
+        log(event, a, 0, 0);
+    }
+
+    /**
+     * Records an event with two values.
+     *
+     * @param event the event
+     * @param a the first value for the event's message
+     * @param b the second value
+     */
+    public void log(Event event, int a, int b) {
+        log(event, a, b, 0);
+    }
+
+    /**
+     * Records an event with three values. Safe to call from any thread, and
+     * never waits for the writer.
+     *
+     * @param event the event
+     * @param a the first value for the event's message
+     * @param b the second value
+     * @param c the third value
+     */
+    public void log(Event event, int a, int b, int c) {
+        if (event.severity.ordinal() < threshold) {
+            return;
+        }
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail > mask) {
+                dropped.incrementAndGet();      //full, don't wait for the writer
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & mask;
+        times[slot] = System.nanoTime();
+        events[slot] = event;
+        first[slot] = a;
+        second[slot] = b;
+        third[slot] = c;
+        sequences.lazySet(slot, seq + 1);
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full
+     *
+     * @return the number of dropped events
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes every event recorded so far that has not been written yet. Called
+     * by the writer thread and when the program exits.
+     */
+    public synchronized void flush() {
+        long next = tail;
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            out.println("WARN  " + lost + " log events dropped");
+        }
+        while (true) {
+            int slot = (int) next & mask;
+            if (sequences.get(slot) != next + 1) {
+                break;
+            }
+            long millis = (times[slot] - startNanos) / 1000000;
+            Event event = events[slot];
+            String message = String.format(event.format, first[slot], second[slot], third[slot]);
+            out.printf("%d.%03d %-5s %s%n", millis / 1000, millis % 1000, event.severity, message);
+            next++;
+            tail = next;
+        }
+        out.flush();
+    }
+
+    private void writeLoop() {
+        while (true) {
+            flush();
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+    }
+}
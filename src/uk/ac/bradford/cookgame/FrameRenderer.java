@@ -0,0 +1,182 @@
+package uk.ac.bradford.cookgame;
+
+import java.awt.DisplayMode;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A FrameRenderer draws the game on its own thread at a steady frame rate,
+ * instead of asking Swing to repaint the Canvas and waiting for the event
+ * thread to get round to it. Frames are drawn into the back buffer of a
+ * BufferStrategy on a heavyweight AWT surface and then shown in one go, by
+ * flipping pages where the graphics pipeline can and by copying otherwise, so
+ * the screen never shows a half drawn frame.
+ *
+ * Frames are paced to fixed deadlines, one frame period apart, with the
+ * period taken from the refresh rate of the display unless a frame rate is
+ * given. Because the deadlines do not depend on how long a frame took, a
+ * frame that is shown late is not followed by one that is late as well, and
+ * if show() waits for the display to refresh, the renderer simply keeps in
+ * step with it. If the renderer falls behind by more than a whole period the
+ * deadlines start again from now, rather than drawing a burst of frames to
+ * catch up. How far the time between two frames is from the period is
+ * recorded in PerfMetrics as the frame jitter.
+ *
+ * @author prtrundl
+ */
+class FrameRenderer implements Runnable {
+
+    /**
+     * The frame rate used when the refresh rate of the display is not known
+     */
+    static final int DEFAULT_FRAMES_PER_SECOND = 60;
+
+    private final Canvas canvas;
+    private final java.awt.Canvas surface = new java.awt.Canvas();
+    private final long periodNanos;
+    private volatile PerfMetrics metrics;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Creates a renderer for a Canvas. The Canvas is switched to active
+     * rendering, so it is no longer painted by Swing.
+     *
+     * @param canvas the Canvas that draws the frames
+     * @param framesPerSecond the number of frames to draw each second, or 0
+     * to match the refresh rate of the display
+     */
+    FrameRenderer(Canvas canvas, int framesPerSecond) {
+        this.canvas = canvas;
+        int rate = framesPerSecond > 0 ? framesPerSecond : displayRefreshRate();
+        periodNanos = 1000000000L / rate;
+        canvas.setActive();
+        surface.setIgnoreRepaint(true);     //every frame is drawn by the renderer anyway
+        surface.setFocusable(false);        //so key presses still go to the window
+    }
+
+    /**
+     * Returns the refresh rate of the default screen, or
+     * DEFAULT_FRAMES_PER_SECOND if it is not known.
+     *
+     * @return the refresh rate in frames per second
+     */
+    static int displayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return DEFAULT_FRAMES_PER_SECOND;
+        }
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_FRAMES_PER_SECOND : rate;
+    }
+
+    /**
+     * Returns the surface frames are drawn on, which must be added to the
+     * window in place of the Canvas.
+     *
+     * @return the surface
+     */
+    java.awt.Canvas getSurface() {
+        return surface;
+    }
+
+    /**
+     * Sets the metrics to record the frame jitter into.
+     *
+     * @param metrics the metrics, or null to stop recording
+     */
+    void setMetrics(PerfMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts the renderer thread. Nothing is drawn until the surface has been
+     * added to a window that is showing.
+     */
+    synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "frame-renderer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the renderer thread and waits for it to finish.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join();
+            thread = null;
+        }
+    }
+
+    /**
+     * The renderer loop: draws and shows a frame, then waits for the next
+     * deadline, until stopped.
+     */
+    @Override
+    public void run() {
+        BufferStrategy strategy = null;
+        long nextFrame = System.nanoTime();
+        long lastShown = 0;
+        while (running) {
+            if (!surface.isDisplayable() || surface.getWidth() <= 0 || surface.getHeight() <= 0) {
+                strategy = null;                //not showing yet, or the window has gone
+                lastShown = 0;
+                LockSupport.parkNanos(periodNanos);
+                nextFrame = System.nanoTime();
+                continue;
+            }
+            if (strategy == null) {
+                surface.createBufferStrategy(2);
+                strategy = surface.getBufferStrategy();
+            }
+            drawFrame(strategy);
+
+            long shown = System.nanoTime();
+            PerfMetrics recorder = metrics;
+            if (lastShown != 0 && recorder != null) {
+                recorder.recordFrameJitter(Math.abs(shown - lastShown - periodNanos));
+            }
+            lastShown = shown;
+            nextFrame += periodNanos;
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (wait < -periodNanos) {
+                nextFrame = System.nanoTime();  //fell behind, don't try to catch up
+            }
+        }
+    }
+
+    /**
+     * Draws one frame into the back buffer and shows it, drawing it again if
+     * the buffer's contents were lost on the way (e.g. when the display mode
+     * changes).
+     *
+     * @param strategy the BufferStrategy of the surface
+     */
+    private void drawFrame(BufferStrategy strategy) {
+        do {
+            do {
+                Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    canvas.render(g2, surface.getWidth(), surface.getHeight());
+                } finally {
+                    g2.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();     //flush the window system's queue, or frames can arrive in bunches
+    }
+}
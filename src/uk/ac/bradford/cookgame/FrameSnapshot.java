@@ -0,0 +1,84 @@
+package uk.ac.bradford.cookgame;
+
+/**
+ * A FrameSnapshot is a copy of everything the Canvas needs to draw one frame:
+ * the tiles, the player and the customers. The game thread copies the game
+ * state into a snapshot at the end of each turn and the Swing thread draws
+ * from it, so the two threads never share live game objects. Snapshots are
+ * reused from frame to frame; capture only allocates when the level size or
+ * the number of customers grows, and only copies the chunks of the level that
+ * have changed since the last capture (see Level.copyFrom).
+ *
+ * @author prtrundl
+ */
+class FrameSnapshot {
+
+    Level level;            //copy of the tiles, or null if there is no level
+
+    boolean hasPlayer;
+    int playerX;
+    int playerY;
+    int stamina;
+    int maxStamina;
+    int carriedFood;
+    boolean breaking;
+
+    int customerCount;      //number of valid entries in the customer arrays
+    int[] customerHandle = new int[8];  //see CustomerStore.getHandle
+    int[] customerX = new int[8];
+    int[] customerY = new int[8];
+    int[] patience = new int[8];
+    int[] maxPatience = new int[8];
+    int[] foodWanted = new int[8];
+
+    int score;
+
+    /**
+     * Copies the state of a game into this snapshot.
+     *
+     * @param tiles the current level, may be null
+     * @param player the current player, may be null
+     * @param customers the current customers, may be null
+     * @param score the current score
+     */
+    void capture(Level tiles, Player player, CustomerStore customers, int score) {
+        if (tiles == null) {
+            level = null;
+        } else {
+            if (level == null || level.getWidth() != tiles.getWidth() || level.getHeight() != tiles.getHeight()) {
+                level = new Level(tiles.getWidth(), tiles.getHeight());
+            }
+            level.copyFrom(tiles);
+        }
+
+        hasPlayer = player != null;
+        if (hasPlayer) {
+            playerX = player.getX();
+            playerY = player.getY();
+            stamina = player.getStamina();
+            maxStamina = player.getMaxStamina();
+            carriedFood = player.getCarriedFoodType();
+            breaking = player.isbreaking();
+        }
+
+        customerCount = customers == null ? 0 : customers.size();
+        if (customerCount > customerX.length) {
+            int size = Math.max(customerCount, customerX.length * 2);
+            customerHandle = new int[size];
+            customerX = new int[size];
+            customerY = new int[size];
+            patience = new int[size];
+            maxPatience = new int[size];
+            foodWanted = new int[size];
+        }
+        if (customerCount > 0) {
+            System.arraycopy(customers.handles, 0, customerHandle, 0, customerCount);
+            System.arraycopy(customers.x, 0, customerX, 0, customerCount);
+            System.arraycopy(customers.y, 0, customerY, 0, customerCount);
+            System.arraycopy(customers.patience, 0, patience, 0, customerCount);
+            System.arraycopy(customers.maxPatience, 0, maxPatience, 0, customerCount);
+            System.arraycopy(customers.foodWanted, 0, foodWanted, 0, customerCount);
+        }
+        this.score = score;
+    }
+}
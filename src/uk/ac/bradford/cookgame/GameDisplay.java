@@ -0,0 +1,35 @@
+package uk.ac.bradford.cookgame;
+
+/**
+ * The GameDisplay interface is implemented by anything that wants to be told
+ * about the state of a game at the end of each turn. The GameGUI class
+ * implements it to draw the game to the screen, but a GameEngine can also run
+ * with no display at all (see the NONE constant), which allows the full game
+ * rules to be used without a window, for example in simulations and checks.
+ *
+ * @author prtrundl
+ */
+public interface GameDisplay {
+
+    /**
+     * A GameDisplay that ignores every update. Used by GameEngine objects that
+     * are created without a display.
+     */
+    GameDisplay NONE = new GameDisplay() {
+        @Override
+        public void updateDisplay(Level tiles, Player player, CustomerStore customers, int score) {
+        }
+    };
+
+    /**
+     * Called by the GameEngine after each turn with the current state of the
+     * game.
+     *
+     * @param tiles The Level holding the tiles of the current game level
+     * @param player The current Player object, or null if there is no player
+     * @param customers The customers in the current level, or null if there
+     * are none
+     * @param score The score of the game
+     */
+    void updateDisplay(Level tiles, Player player, CustomerStore customers, int score);
+}
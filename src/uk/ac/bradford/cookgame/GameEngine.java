@@ -1,10 +1,8 @@
 package uk.ac.bradford.cookgame;
 
-import java.util.ArrayList;
-import java.awt.Point;
-import static java.lang.Math.random;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
 
 /**
  * The GameEngine class is responsible for managing information about the game,
@@ -30,28 +28,75 @@ public class GameEngine {
     }
 
     /**
-     * The width of the level, measured in tiles. Changing this may cause the
-     * display to draw incorrectly, and as a minimum the size of the GUI would
-     * need to be adjusted.
+     * The default width of the level, measured in tiles, which fills the game
+     * window. Larger levels can be passed to the constructor; the GUI then
+     * scrolls to follow the player.
      */
     public static final int LEVEL_WIDTH = 18;
 
     /**
-     * The height of the level, measured in tiles. Changing this may cause the
-     * display to draw incorrectly, and as a minimum the size of the GUI would
-     * need to be adjusted.
+     * The default height of the level, measured in tiles, which fills the game
+     * window. Larger levels can be passed to the constructor; the GUI then
+     * scrolls to follow the player.
      */
     public static final int LEVEL_HEIGHT = 9;
 
     /**
-     * A random number generator that can be used to include randomised choices
-     * in the creation of levels, in choosing places to place the player and
-     * customers, and to randomise movement etc. Passing an integer (e.g. 123)
-     * to the constructor called here will give fixed results - the same numbers
-     * will be generated every time WHICH CAN BE VERY USEFUL FOR TESTING AND
-     * BUGFIXING!
+     * The types a tile of a new level can be, and the types a table or extra
+     * food is swapped for (see generateLevel). Only the first NON_FOOD_TILES
+     * of REPLACEMENT_TILES are used once there is enough food.
      */
-    private Random rng = new Random();
+    private static final TileType[] LEVEL_TILES = {TileType.WALL, TileType.FLOOR1, TileType.FLOOR2,
+        TileType.FOOD1, TileType.FOOD2, TileType.FOOD3, TileType.TABLE, TileType.DOOR};
+    private static final TileType[] REPLACEMENT_TILES = {TileType.WALL, TileType.FLOOR1, TileType.FLOOR2,
+        TileType.DOOR, TileType.FOOD1, TileType.FOOD2, TileType.FOOD3};
+    private static final int NON_FOOD_TILES = 4;
+
+    /**
+     * All TileType values, indexed by ordinal. TileType.values() makes a new
+     * array every time it is called.
+     */
+    private static final TileType[] TILE_TYPES = TileType.values();
+
+    /**
+     * The number of random spawn locations tried when looking for a free one
+     * to put new food on, see takeFreeSpawn
+     */
+    private static final int SPAWN_TRIES = 8;
+
+    /**
+     * The size of the levels created by this engine, measured in tiles.
+     */
+    private final int levelWidth;
+    private final int levelHeight;
+
+    /**
+     * The numbers that decide how hard the game is
+     */
+    private final GameRules rules;
+
+    /**
+     * The random number generator used for every randomised choice in the
+     * game: the creation of levels, choosing places to place the player and
+     * customers, new food etc. Nothing else in the engine is random, so an
+     * engine created with the same seed and given the same moves plays out
+     * exactly the same every time, WHICH CAN BE VERY USEFUL FOR TESTING AND
+     * BUGFIXING! (see InputLog) The generator gives the same numbers as a
+     * SplittableRandom, but its state can be saved and restored (see
+     * saveState).
+     */
+    private final GameRandom rng;
+
+    /**
+     * The seed rng was created with.
+     */
+    private final long seed;
+
+    /**
+     * The log that every turn played through playTurn is recorded in, or null
+     * if the game is not being recorded.
+     */
+    private InputLog inputLog;
 
     /**
      * The current level number for the game. As the player completes levels the
@@ -70,27 +115,30 @@ public class GameEngine {
     /**
      * The current score in this game.
      */
-    public static int score;
+    private int score;
 
     /**
-     * The GUI associated with this GameEngine object. This link allows the
-     * engine to pass level and entity information to the GUI to be drawn.
+     * The display associated with this GameEngine object. This link allows the
+     * engine to pass level and entity information to the GUI to be drawn. For
+     * an engine created without a display this is GameDisplay.NONE.
      */
-    private GameGUI gui;
+    private GameDisplay gui;
 
     /**
-     * The 2 dimensional array of tiles that represent the current level. The
-     * size of this array should use the LEVEL_HEIGHT and LEVEL_WIDTH attributes
-     * when it is created. This is the array that is used to draw images to the
-     * screen by the GUI class.
+     * The tiles that represent the current level. The size of the level should
+     * use the levelWidth and levelHeight attributes when it is created. This
+     * is the Level that is used to draw images to the screen by the GUI class.
      */
-    private TileType[][] level;
+    private Level level;
 
     /**
-     * An ArrayList of Point objects used to create and track possible locations
-     * to place the player and customers when a new level is created.
+     * The free floor tiles of the current level, used to create and track
+     * possible locations to place the player and customers when a new level
+     * is created, and new food when the player empties their hands at the
+     * trash. A tile is only in the set once, so it never grows beyond the
+     * size of the level.
      */
-    private ArrayList<Point> spawnLocations;
+    private CellSet spawnLocations;
 
     /**
      * A Player object that is the current player. This object stores the state
@@ -103,39 +151,153 @@ public class GameEngine {
     private Player player;
 
     /**
-     * An array of Customer objects that represents the customers in the current
-     * level of the game. Elements in this array should be either an object of
-     * the type Customer (meaning that a customer is exists (not fed/cleared
-     * yet) and therefore needs to be drawn or moved) or should be null (which
-     * means nothing is drawn or processed for movement). null values in this
-     * array are skipped during drawing and movement processing. Customers that
-     * the player correctly feeds can be replaced with (i.e. assigned) the value
-     * null in this array which removes them from the game, using syntax such as
-     * customers[i] = null.
+     * The customers in the current level of the game. Every customer in the
+     * store exists (has not been cleared yet) and therefore needs to be drawn
+     * or moved. Customers that the player correctly feeds are marked as fed
+     * and removed from the store by cleanFedCustomers.
+     */
+    private final CustomerStore customers;
+
+    /**
+     * Distance from every tile to the nearest table, used to move customers.
+     * It is rebuilt only when the tiles of the level have changed since it was
+     * last built, which is tracked with the levelVersion counter.
+     */
+    private final DistanceField tableDistances;
+
+    /**
+     * Incremented every time a tile in the level changes in a way that affects
+     * tableDistances, or a new level is set.
+     */
+    private int levelVersion = 0;
+
+    /**
+     * The levelVersion that tableDistances was last built for.
+     */
+    private int tableDistancesVersion = -1;
+
+    /**
+     * Records which customer is standing on each tile. The customers store
+     * keeps it up to date with the handle + 1 of each customer as its id, so
+     * a customer can be found by position without looping over every
+     * customer.
+     */
+    private final OccupancyGrid occupancy;
+
+    /**
+     * Moves the customers and reduces their patience each turn.
+     */
+    private final CustomerPlanner planner;
+
+    /**
+     * Joins up the walkable areas of each new level, so every level can be
+     * played.
+     */
+    private final LevelConnector connector;
+
+    /**
+     * Builds the next levels on a background thread while the current level
+     * is played, or null to build each level when it is reached. See
+     * setLevelsAhead.
      */
-    private Customer[] customers;
+    private LevelPipeline pipeline;
+
+    /**
+     * If true, customer moves and patience are worked out on several threads
+     * when there are enough customers. The game plays out exactly the same
+     * either way.
+     */
+    private boolean parallelCustomers;
+
+    /**
+     * Records how long turns, customer moves and level generation take.
+     */
+    private final PerfMetrics metrics = new PerfMetrics();
 
     /**
      * Constructor that creates a GameEngine object and connects it with a
-     * GameGUI object.
+     * GameDisplay object, usually the GameGUI. Levels are the default size.
      *
-     * @param gui The GameGUI object that this engine will pass information to
-     * in order to draw levels and entities to the screen.
+     * @param gui The GameDisplay object that this engine will pass information
+     * to in order to draw levels and entities to the screen.
      */
-    public GameEngine(GameGUI gui) {
-        this.gui = gui;
+    public GameEngine(GameDisplay gui) {
+        this(gui, LEVEL_WIDTH, LEVEL_HEIGHT);
     }
 
     /**
-     * Generates a new level. The method builds a 2D array of TileType values
-     * that will be used to draw level to the screen and to add a variety of
-     * tiles into each level. Tiles can be floors, walls, tables, doors or food
-     * sources.
+     * Constructor that creates a GameEngine object with levels of a given
+     * size and connects it with a GameDisplay object. The random number
+     * generator gets a new random seed.
      *
-     * @return A 2D array filled with TileType values representing the level in
-     * the current game. The size of this array should use the width and height
-     * of the game level using the LEVEL_WIDTH and LEVEL_HEIGHT attributes.
+     * @param gui The GameDisplay object that this engine will pass information
+     * to in order to draw levels and entities to the screen.
+     * @param width the width of each level in tiles
+     * @param height the height of each level in tiles
+     * @throws IllegalArgumentException if the size is smaller than the default
+     * size of LEVEL_WIDTH by LEVEL_HEIGHT
+     */
+    public GameEngine(GameDisplay gui, int width, int height) {
+        this(gui, width, height, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructor that creates a GameEngine object with levels of a given
+     * size and a fixed random seed, and connects it with a GameDisplay
+     * object.
+     *
+     * @param gui The GameDisplay object that this engine will pass information
+     * to in order to draw levels and entities to the screen.
+     * @param width the width of each level in tiles
+     * @param height the height of each level in tiles
+     * @param seed the seed for the random number generator
+     * @throws IllegalArgumentException if the size is smaller than the default
+     * size of LEVEL_WIDTH by LEVEL_HEIGHT
+     */
+    public GameEngine(GameDisplay gui, int width, int height, long seed) {
+        this(gui, width, height, seed, GameRules.DEFAULT);
+    }
+
+    /**
+     * Constructor that creates a GameEngine object with levels of the given
+     * size, a fixed random seed and changed rules, and connects it with a
+     * GameDisplay.
+     *
+     * @param gui The GameDisplay object that this engine will update, or
+     * GameDisplay.NONE to run without a display
+     * @param width the width of each level in tiles
+     * @param height the height of each level in tiles
+     * @param seed the seed for the random number generator
+     * @param rules the rules to play with
+     * @throws IllegalArgumentException if the size is smaller than the default
+     * size of LEVEL_WIDTH by LEVEL_HEIGHT
+     */
+    public GameEngine(GameDisplay gui, int width, int height, long seed, GameRules rules) {
+        if (width < LEVEL_WIDTH || height < LEVEL_HEIGHT) {
+            throw new IllegalArgumentException("Levels must be at least " + LEVEL_WIDTH + "x" + LEVEL_HEIGHT);
+        }
+        this.gui = gui;
+        this.levelWidth = width;
+        this.levelHeight = height;
+        this.seed = seed;
+        this.rules = rules;
+        rng = new GameRandom(seed);
+        tableDistances = new DistanceField(width, height);
+        occupancy = new OccupancyGrid(width, height);
+        customers = new CustomerStore(occupancy);
+        planner = new CustomerPlanner(tableDistances, customers, occupancy);
+        connector = new LevelConnector(width, height);
+    }
+
+    /**
+     * Constructor that creates a headless GameEngine object. The engine runs
+     * the full game rules but nothing is drawn, so it can be used without a
+     * screen.
      */
+    public GameEngine() {
+        this(GameDisplay.NONE);
+    }
+
     public boolean isContradict(int x, int y) {
         // Check if the player's position contradicts the given coordinates
         if (player != null && player.getX() == x && player.getY() == y) {
@@ -143,179 +305,251 @@ public class GameEngine {
         }
 
         // Check if any customer's position contradicts the given coordinates
-        if (customers != null) {
-            for (Customer customer : customers) {
-                if (customer != null && customer.getX() == x && customer.getY() == y) {
-                    return true; // Customer's position contradicts
-                }
-            }
-        }
-        return false; // No contradiction found
+        return occupancy.isOccupied(x, y);
     }
 
-    public TileType[][] generateLevel() {
-        System.out.println("Level " + levelNumber);
-        System.out.println("Total score: " + score);
-        TileType[][] level = new TileType[GameEngine.LEVEL_WIDTH][GameEngine.LEVEL_HEIGHT];
-        TileType[] tileTypes = {TileType.WALL, TileType.FLOOR1, TileType.FLOOR2, TileType.FOOD1, TileType.FOOD2, TileType.FOOD3, TileType.TABLE, TileType.DOOR};
-        int redAppleCount = 0;
-        int greenAppleCount = 0;
-        int breadCount = 0;
-        int maxRedApples = 20;
-        int maxGreenApples = 10;
-        int maxBread = 10;
+    /**
+     * Generates a new level. The method builds a Level of TileType values that
+     * will be used to draw level to the screen and to add a variety of tiles
+     * into each level. Tiles can be floors, walls, tables, doors or food
+     * sources.
+     *
+     * Each tile is FLOOR1 with a chance that falls as the level number rises,
+     * otherwise one of LEVEL_TILES at random. A table, or food once there is
+     * enough food for every customer, is swapped for one of the other types
+     * at random. Then one table per customer is put on a random FLOOR1 tile
+     * (see placeTables). Finally walls are carved where needed so that every
+     * floor, table and food tile can be reached (see LevelConnector). Every
+     * step takes time in proportion to the size of the level, however full
+     * it is.
+     *
+     * This version uses the engine's own random number generator, so every
+     * call gives a different level for the current level number. The levels
+     * that are played are built by prepareLevel instead.
+     *
+     * @return A Level filled with TileType values representing the level in the
+     * current game. The size of the Level should use the width and height of
+     * the game level using the levelWidth and levelHeight attributes.
+     */
+    public Level generateLevel() {
+        return generateLevel(levelNumber, rng, connector);
+    }
+
+    /**
+     * Generates the tiles of a new level, see generateLevel(). Only uses the
+     * arguments and the final fields of the engine, so it can be called on
+     * another thread with its own random number generator and connector.
+     *
+     * @param number the level number to generate the level for
+     * @param random the random number generator to use
+     * @param connector the connector to join up the level with
+     * @return the new level
+     */
+    private Level generateLevel(int number, GameRandom random, LevelConnector connector) {
+        Level level = new Level(levelWidth, levelHeight);
+        int customerCount = rules.getCustomerCount(number); // Number of customers based on level number
+        double floorChance = 1 - number * 0.15;    // 85%, 70%, 55%... and never after level 6
         int foodGenerated = 0;
-        int customerCount = (int) Math.floor(levelNumber * 1.5); // Number of customers based on levelNumber
-        int nbTables = 0;
-        for (int row = 0; row < GameEngine.LEVEL_WIDTH; row++) {
-            for (int column = 0; column < GameEngine.LEVEL_HEIGHT; column++) {
-                double randomIndex = rng.nextDouble();
-
-                if (randomIndex < 1 - (levelNumber * 0.15)) {
-                    randomIndex = 1; // Select FLOOR1 with 95%, 90%, 80% probability based on levelNumber
-                } else {
-                    randomIndex = rng.nextInt(tileTypes.length); // Randomly select other tile types
-                }
-                if (randomIndex == 3 || randomIndex == 4 || randomIndex == 5) {
+        int floorCount = 0;
+        for (int row = 0; row < levelWidth; row++) {
+            for (int column = 0; column < levelHeight; column++) {
+                TileType type = random.nextDouble() < floorChance ? TileType.FLOOR1
+                        : LEVEL_TILES[random.nextInt(LEVEL_TILES.length)];
+                boolean food = type == TileType.FOOD1 || type == TileType.FOOD2 || type == TileType.FOOD3;
+                if (food) {
                     foodGenerated++;
-                } // check if table 
-                else if (randomIndex == 6) {
-                    nbTables++;
                 }
-                // no more food 
-                while ((customerCount + 2 <= foodGenerated && (randomIndex == 3 || randomIndex == 4 || randomIndex == 5)) || (randomIndex == 6) || randomIndex==8 ) {
-                    randomIndex = rng.nextInt(tileTypes.length);
+                boolean moreFood = foodGenerated < customerCount + 2;
+                if (type == TileType.TABLE || (food && !moreFood)) {
+                    // tables are placed afterwards; pick one of the allowed types instead
+                    type = REPLACEMENT_TILES[random.nextInt(moreFood ? REPLACEMENT_TILES.length : NON_FOOD_TILES)];
                 }
-                level[row][column] = tileTypes[(int) randomIndex];
-
-                if (level[row][column] == TileType.FOOD1 && redAppleCount < maxRedApples && breadCount < customerCount) {
-                    redAppleCount++;
-                } else if (level[row][column] == TileType.FOOD2 && greenAppleCount < maxGreenApples && breadCount < customerCount) {
-                    greenAppleCount++;
-                } else if (level[row][column] == TileType.FOOD3 && breadCount < maxBread && breadCount < customerCount) {
-                    breadCount++;
+                if (type == TileType.FLOOR1) {
+                    floorCount++;
                 }
+                level.set(row, column, type);
             }
         }
-        int tablesNeeded = customerCount;
-        while (tablesNeeded > 0) {
-        int randomRow = rng.nextInt(GameEngine.LEVEL_WIDTH);
-        int randomColumn = rng.nextInt(GameEngine.LEVEL_HEIGHT);
-
-        // Check if the randomly selected position is available for placing a table
-        if (level[randomRow][randomColumn] == TileType.FLOOR1) {
-            level[randomRow][randomColumn] = TileType.TABLE;
-            tablesNeeded--;
-        }
-    }
-        
+        placeTables(level, customerCount, floorCount, random);
 
         // assign a trash bin
-        level[GameEngine.LEVEL_WIDTH - 1][0] = TileType.TRASH;
+        level.set(levelWidth - 1, 0, TileType.TRASH);
+        connector.connect(level);
         return level;
     }
 
     /**
-     * Generates spawn points for the player and customers. The method processes
-     * the level array and finds positions that are suitable for spawning, i.e.
-     * empty tiles such as floors. Suitable positions should then be added to
-     * the ArrayList that can be retrieved as Point objects - Points are a
-     * simple kind of object that contain an X and a Y co-ordinate stored using
-     * the int primitive type.
-     *
-     * @return An ArrayList containing Point objects representing suitable X and
-     * Y co-ordinates in the current level where the player or customers can be
-     * added into the game.
-     */
-    private ArrayList<Point> getSpawns() {
-        ArrayList<Point> spawnLocations = new ArrayList<>();
-
-        for (int row = 0; row < GameEngine.LEVEL_WIDTH; row++) {
-            for (int column = 0; column < GameEngine.LEVEL_HEIGHT; column++) {
-                TileType tile = level[row][column];
-                if (tile == TileType.FLOOR1 || tile == TileType.FLOOR2) {
-                    spawnLocations.add(new Point(row, column));
+     * Turns a number of FLOOR1 tiles of a new level into tables, chosen at
+     * random with every FLOOR1 tile equally likely. While most tiles are
+     * FLOOR1 random tiles are tried, which usually finds one in a few tries.
+     * If the tries run out the rest are chosen in a single pass over the
+     * level, each FLOOR1 tile being picked with a chance of the number of
+     * tables still needed over the number of FLOOR1 tiles still to come. If
+     * the level has fewer FLOOR1 tiles than tables every one becomes a table.
+     *
+     * @param level the level to put the tables in
+     * @param tables the number of tables wanted
+     * @param floors the number of FLOOR1 tiles in the level
+     * @param random the random number generator to use
+     */
+    private void placeTables(Level level, int tables, int floors, GameRandom random) {
+        int needed = Math.min(tables, floors);
+        for (int tries = 4 * needed; needed > 0 && tries > 0; tries--) {
+            int randomRow = random.nextInt(levelWidth);
+            int randomColumn = random.nextInt(levelHeight);
+            if (level.get(randomRow, randomColumn) == TileType.FLOOR1) {
+                level.set(randomRow, randomColumn, TileType.TABLE);
+                needed--;
+                floors--;
+            }
+        }
+        for (int row = 0; row < levelWidth && needed > 0; row++) {
+            for (int column = 0; column < levelHeight && needed > 0; column++) {
+                if (level.get(row, column) == TileType.FLOOR1) {
+                    if (random.nextInt(floors) < needed) {
+                        level.set(row, column, TileType.TABLE);
+                        needed--;
+                    }
+                    floors--;
                 }
             }
         }
-
-        return spawnLocations;
     }
 
     /**
-     * Adds customers in suitable locations in the current level. The first
-     * version of this method should picked fixed positions for customers by
-     * calling the three argument version of the constructor for the Customer
-     * class and using fixed values for the patience, X and Y positions of the
-     * Customer to be added. Customer objects created this way should be added
-     * into an array of Customer objects that is declared, instantiated and
-     * filled inside this method. This array should the be returned by this
-     * method. Customer objects in the array returned by this method will then
-     * be drawn to the screen using the existing code in the GameGUI class.
-     *
-     * The second version of this method (described in a later task) should call
-     * the four argument constructor for Customer (instead of the three argument
-     * constructor) and pass an integer with a value of either 1, 2 or 3 for the
-     * last argument. This will generate new types of customer that want
-     * different types of food.
-     *
-     * The third version of this method should use the spawnLocations ArrayList
-     * to pick suitable positions to add customers, removing these positions
-     * from the spawns ArrayList as they are used (using the remove() method) to
-     * avoid multiple customers spawning in the same location and to prevent
-     * them from being added on top of walls, tables etc. The method then
-     * creates customers by instantiating the Customer class, setting patience,
-     * and then setting the X and Y position for the customer using the X and Y
-     * values from the Point object that was removed from the spawns ArrayList.
+     * Generates spawn points for the player and customers. The method processes
+     * the level array and finds positions that are suitable for spawning, i.e.
+     * empty tiles such as floors. Suitable positions are added to a CellSet,
+     * which stores each one as a single int and can pick a random one
+     * without searching.
      *
-     * @return An array of Customer objects representing the customers for the
-     * current level of the game
+     * @param level the level to find spawn points in
+     * @return A CellSet containing the tiles in the level where the player or
+     * customers can be added into the game.
      */
-    //// this mod
-    private Customer[] addCustomers() {
-        Customer[] customers = new Customer[(int) (levelNumber * 1.5)]; // Create an array with a fixed length
-        Random random = new Random();
+    private CellSet getSpawns(Level level) {
+        CellSet spawnLocations = new CellSet(levelWidth, levelHeight);
 
-        ArrayList<Point> spawnLocations = getSpawns(); // Retrieve spawn locations
+        for (int i = level.next(Level.FLOOR, 0); i >= 0; i = level.next(Level.FLOOR, i + 1)) {
+            spawnLocations.add(spawnLocations.cellOf(level.xOf(i), level.yOf(i)));
+        }
 
-        for (int i = 0; i < customers.length; i++) {
-            int maxPatience = 150 - (levelNumber * 2); // Set the desired max patience value for each customer
+        return spawnLocations;
+    }
 
-            Point position = spawnLocations.remove(random.nextInt(spawnLocations.size())); // Remove and get a random spawn location
-            int randFoodType = getRandomFoodType(random);
+    /**
+     * Builds everything needed to start a level: generates the tiles, finds
+     * the spawn points, then picks a spawn point and a food type for each
+     * customer and a spawn point for the player. Every random choice is made
+     * with the level's own stream of random numbers (see
+     * GameRandom.forStream), so the level depends only on the seed and the
+     * level number. It is the same whenever and on whichever thread it is
+     * built, which lets a LevelPipeline build it ahead of time without
+     * changing how the game plays out.
+     *
+     * If there are too few spawn points for every customer and the player,
+     * fewer customers are added. The player always gets a spawn point, or
+     * the trash tile if the level has none.
+     *
+     * @param number the level number
+     * @param connector the connector to join up the level with, which must
+     * not be in use on another thread
+     * @return the new level
+     */
+    private PreparedLevel prepareLevel(int number, LevelConnector connector) {
+        long start = System.nanoTime();
+        GameRandom random = GameRandom.forStream(seed, number);
+        Level tiles = generateLevel(number, random, connector);
+        long generationNanos = System.nanoTime() - start;
+        CellSet spawns = getSpawns(tiles);
+        int customerCount = Math.min(rules.getCustomerCount(number), Math.max(0, spawns.size() - 1));
+
+        int[] customerX = new int[customerCount];
+        int[] customerY = new int[customerCount];
+        int[] maxPatience = new int[customerCount];
+        int[] foodWanted = new int[customerCount];
+        for (int i = 0; i < customerCount; i++) {
+            int cell = spawns.removeRandom(random); // Remove and get a random spawn location
+            customerX[i] = spawns.xOf(cell);
+            customerY[i] = spawns.yOf(cell);
+            foodWanted[i] = getRandomFoodType(random);
+            maxPatience[i] = rules.getPatience(number);
             // if vip customer reduce the maxPatience
-            if (randFoodType == 4) {
-                maxPatience -= 50;
+            if (foodWanted[i] == 4) {
+                maxPatience[i] -= 50;
             }
-            customers[i] = new Customer(maxPatience, position.x, position.y, randFoodType); // Create a new Customer object with the desired position and food type and add it to the array
         }
+        int player = spawns.isEmpty() ? spawns.cellOf(levelWidth - 1, 0) : spawns.removeRandom(random);
+        return new PreparedLevel(number, tiles, customerX, customerY, maxPatience, foodWanted,
+                spawns.xOf(player), spawns.yOf(player), spawns, generationNanos);
+    }
 
-        return customers;
+    /**
+     * Returns the level for the current level number, from the pipeline if
+     * levels are being built ahead or built now if not.
+     *
+     * @return the level to play next
+     */
+    private PreparedLevel takeLevel() {
+        PreparedLevel next = pipeline == null ? prepareLevel(levelNumber, connector) : pipeline.take(levelNumber);
+        metrics.levelGeneration.record(next.generationNanos);  //only this thread records level times
+        return next;
     }
 
-    private ArrayList<Point> getAvailablePositions() {
-        ArrayList<Point> availablePositions = new ArrayList<>();
+    /**
+     * Replaces the current level, its spawn points and its customers with a
+     * prepared level. The player is placed separately.
+     *
+     * @param next the level to start
+     */
+    private void enterLevel(PreparedLevel next) {
+        EventLog.GAME.log(EventLog.Event.LEVEL_STARTED, levelNumber, score);
+        setLevel(next.tiles);
+        spawnLocations = next.spawns;
+        occupancy.clear();
+        addCustomers(next);
+    }
 
-        for (int row = 0; row < GameEngine.LEVEL_WIDTH; row++) {
-            for (int column = 0; column < GameEngine.LEVEL_HEIGHT; column++) {
-                if (level[row][column] == TileType.FLOOR1) {
-                    Point position = new Point(row, column);
-                    if (!isContradict(position.x, position.y)) {
-                        availablePositions.add(position);
-                    }
-                }
-            }
+    /**
+     * Adds the customers of a prepared level to the customers store,
+     * replacing any that were there before. Where each customer starts, its
+     * patience and the food it wants are picked when the level is prepared
+     * (see prepareLevel), from the spawn locations of the level, so no two
+     * customers start on the same tile or on a wall, table etc.
+     *
+     * @param next the level the customers are for
+     */
+    private void addCustomers(PreparedLevel next) {
+        customers.clear();
+        for (int i = 0; i < next.customerX.length; i++) {
+            customers.add(next.customerX[i], next.customerY[i], next.maxPatience[i], next.foodWanted[i]);
         }
-
-        return availablePositions;
     }
 
-    private Point getRandomPosition(ArrayList<Point> positions, Random random) {
-        return spawnLocations.remove(random.nextInt(spawnLocations.size()));
-
+    /**
+     * Removes and returns a random spawn location that the player and the
+     * customers are not standing on. Only a few random locations are tried,
+     * so it takes the same time however many there are and however crowded
+     * the level is.
+     *
+     * @return the tile, as a cell of spawnLocations, or -1 if none of the
+     * locations tried was free
+     */
+    private int takeFreeSpawn() {
+        for (int tries = 0; tries < SPAWN_TRIES; tries++) {
+            int cell = spawnLocations.sample(rng);
+            if (cell < 0) {
+                return -1;
+            }
+            if (!isContradict(spawnLocations.xOf(cell), spawnLocations.yOf(cell))) {
+                spawnLocations.remove(cell);
+                return cell;
+            }
+        }
+        return -1;
     }
 
-    private int getRandomFoodType(Random random) {
+    private int getRandomFoodType(GameRandom random) {
         return random.nextInt(4) + 1; // Generate a random food type (1, 2,  3, or 4)
     }
 
@@ -328,18 +562,18 @@ public class GameEngine {
      * constructor in the Player class.
      *
      * The second version of this method should use the spawns ArrayList to
-     * select a suitable location to spawn the player and removes the Point from
+     * select a suitable location to spawn the player and removes the location from
      * the spawns ArrayList. This will prevent the Player from being added to
-     * the game inside a wall, bank or breach for example.
+     * the game inside a wall, bank or breach for example. The spawn position
+     * is picked when the level is prepared, see prepareLevel.
      *
+     * @param next the level the player starts in
      * @return A Player object representing the player in the game
      */
-    private Player createPlayer() {
-        int maxStamina = 600; // Set the desired max stamina value
-
-        Point position = spawnLocations.remove(rng.nextInt(spawnLocations.size())); // Remove and get a random spawn location
+    private Player createPlayer(PreparedLevel next) {
+        int maxStamina = rules.getMaxStamina(); // Set the desired max stamina value
 
-        return new Player(maxStamina, position.x, position.y);
+        return new Player(maxStamina, next.playerX, next.playerY);
     }
 
     /**
@@ -367,7 +601,7 @@ public class GameEngine {
         int x = player.getX();
         int y = player.getY();
         boolean ismove = true;
-        int fixed_amount = 15;
+        int fixed_amount = rules.getMoveStamina();
 
         if (player.getStamina() >= fixed_amount) {
             if (direction == 'U' && isValidMove(x, y - 1, false)) {
@@ -383,8 +617,8 @@ public class GameEngine {
             }
         }
 //        System.out.println(player.getStamina());
-        if (ismove && player.getStamina() >= 15) {
-            player.changeStamina(-5);
+        if (ismove && player.getStamina() >= fixed_amount) {
+            player.changeStamina(-rules.getMoveCost());
         }
         if (isAtTrash(player.getX(), player.getY()) && player.hasFood()) {
             //get rid of the food with player 
@@ -392,26 +626,65 @@ public class GameEngine {
             player.giveFood();
 
             //generate another food type at rand position
-            Point randPos = getRandomPosition(spawnLocations, new Random());
-            int randX = randPos.x;
-            int randY = randPos.y;
-            int foodTarget = prevfoodType;
-            
-            while (foodTarget == prevfoodType) {
-                foodTarget = getRandomFoodType(new Random()); //1 2 3 4 
-            }
-            Random random = new Random();
-            int randomNum = random.nextInt(3)+3;
-            while (randomNum-2 == foodTarget) {
-                randomNum = random.nextInt(3)+3; //1,2,3 --> 3,4,5;
+            int randPos = takeFreeSpawn();
+            if (randPos >= 0) {
+                int randX = spawnLocations.xOf(randPos);
+                int randY = spawnLocations.yOf(randPos);
+                int foodTarget = prevfoodType;
+
+                while (foodTarget == prevfoodType) {
+                    foodTarget = getRandomFoodType(rng); //1 2 3 4 
+                }
+                int randomNum = rng.nextInt(3)+3;
+                while (randomNum-2 == foodTarget) {
+                    randomNum = rng.nextInt(3)+3; //1,2,3 --> 3,4,5;
+                }
+                setTile(randX, randY, TILE_TYPES[randomNum]);
             }
-            level[randX][randY] = TileType.values()[randomNum];
         }
 
     }
 
+    /**
+     * Changes a single tile in the current level. All changes to the tiles of
+     * the current level should go through this method (or setLevel) so that
+     * the customer distance field knows when to rebuild. A tile that becomes
+     * walkable only makes paths shorter, so the distance field is updated
+     * around that tile straight away instead of being rebuilt for the whole
+     * level.
+     *
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     * @param type the new type for the tile
+     */
+    private void setTile(int x, int y, TileType type) {
+        boolean wasWalkable = level.is(Level.WALKABLE, x, y);
+        boolean wasTable = level.is(Level.TABLE, x, y);
+        level.set(x, y, type);
+        boolean walkable = level.is(Level.WALKABLE, x, y);
+        if (walkable == wasWalkable && level.is(Level.TABLE, x, y) == wasTable) {
+            return;     //no change to where customers can go
+        }
+        if (walkable && !wasTable && tableDistancesVersion == levelVersion) {
+            tableDistances.open(level, x, y);
+            tableDistancesVersion = ++levelVersion;
+        } else {
+            levelVersion++;
+        }
+    }
+
+    /**
+     * Replaces the current level with a new one.
+     *
+     * @param newLevel the tiles for the new level
+     */
+    private void setLevel(Level newLevel) {
+        level = newLevel;
+        levelVersion++;
+    }
+
     public boolean isAtTrash(int x, int y) {
-        return x == LEVEL_WIDTH - 1 && y == 0;
+        return x == levelWidth - 1 && y == 0;
     }
 
     /**
@@ -425,37 +698,38 @@ public class GameEngine {
      * (thus setting the player's attributes properly to reflect that they
      * delivered food and now can pick up more), and increase the score as well
      * as printing the score to the standard output. Finally it should "feed"
-     * the customer by calling the correct method on the Customer object
+     * the customer by calling the correct method on the customers store
      * indicating that the player has "fed".
      *
-     * @param g The Customer object corresponding to the customer in the game
+     * @param slot The slot in the customers store of the customer in the game
      * that the player just attempted to move into the same tile as.
      */
-    private void deliverFood(Customer customer) {
+    private void deliverFood(int slot) {
         //YOUR CODE HERE
 
-        if (player.getCarriedFoodType() == customer.getFoodWanted()) {
+        if (player.getCarriedFoodType() == customers.getFoodWanted(slot)) {
             player.giveFood(); // removes the carried food
-            customer.feed();
-            score += customer.getPatience();
-            System.out.println("score:" + score);
+            customers.feed(slot);
+            score += customers.getPatience(slot);
+            EventLog.GAME.log(EventLog.Event.FOOD_DELIVERED, turnNumber, score);
         }
 
     }
     
     boolean breakwall(int x, int y){
-        System.out.println("turn Number :" + turnNumber);
-        if( turnNumber%15 == 0 && level[x][y]==TileType.brokenWall2){
-         level[x][y]=TileType.FLOOR1;
+        EventLog.GAME.log(EventLog.Event.WALL_HIT, turnNumber, x, y);
+        if( turnNumber%15 == 0 && level.get(x, y)==TileType.brokenWall2){
+         setTile(x, y, TileType.FLOOR1);
+         EventLog.GAME.log(EventLog.Event.WALL_BROKEN, turnNumber, x, y);
          return true;
      }
-      else if(turnNumber %15 ==0 && level[x][y] != TileType.brokenWall1){
+      else if(turnNumber %15 ==0 && level.get(x, y) != TileType.brokenWall1){
       // replace old image at x , y with new one
-      level[x][y]=TileType.brokenWall1;
+      setTile(x, y, TileType.brokenWall1);
       return false;
      }
-        else if(turnNumber %15 ==0 && level[x][y]!=TileType.brokenWall2){
-         level[x][y]=TileType.brokenWall2;
+        else if(turnNumber %15 ==0 && level.get(x, y)!=TileType.brokenWall2){
+         setTile(x, y, TileType.brokenWall2);
          return false;
      }
      
@@ -463,41 +737,36 @@ public class GameEngine {
      return false;
     }
     
-    private boolean isValidMove(int x, int y, boolean isCustomer) {
-        if (x < 0 || x >= LEVEL_WIDTH || y < 0 || y >= LEVEL_HEIGHT) {
+    boolean isValidMove(int x, int y, boolean isCustomer) {
+        if (!level.contains(x, y)) {
             return false; // Out of bounds
         }
 
-        TileType tileType = level[x][y];
-        
-        if(!isCustomer && (tileType==TileType.WALL || tileType==TileType.brokenWall1 || tileType==TileType.brokenWall2) ){
+        if(!isCustomer && level.is(Level.BREAKABLE, x, y) ){
             player.setIsBreaking(true);
             boolean action = breakwall(x,y);
-            System.out.println("isBreaking = " + player.isbreaking());
             if (!action)
                 return false;
             
             return true;
             }
         
-        player.setIsBreaking(false);
+        if (!isCustomer) {
+            player.setIsBreaking(false);
+        }
         // Check if player carries food, prevent from taking other food
-        if (!isCustomer && player.getCarriedFoodType() != 0 && (tileType == TileType.FOOD1 || tileType == TileType.FOOD2 || tileType == TileType.FOOD3)) {
+        if (!isCustomer && player.getCarriedFoodType() != 0 && level.is(Level.FOOD, x, y)) {
             return false;
         }
 
         // Wall, table, or food source blocking the move for customer
-        if (tileType == TileType.WALL || tileType == TileType.TABLE || (isCustomer && (tileType == TileType.FOOD1 || tileType == TileType.FOOD2 || tileType == TileType.FOOD3))) {
+        if (level.is(Level.BLOCKING, x, y) || (isCustomer && level.is(Level.FOOD, x, y))) {
             return false;
         }
 
         // Check if any other customer is already at the given coordinates
-        if (isCustomer) {
-            for (Customer customer : customers) {
-                if (customer != null && customer.getX() == x && customer.getY() == y) {
-                    return false;
-                }
-            }
+        if (isCustomer && occupancy.isOccupied(x, y)) {
+            return false;
         }
 
         // Check if the player's position contradicts the given coordinates
@@ -505,228 +774,67 @@ public class GameEngine {
     }
 
     private void checkAndMove(int x, int y) {
-        TileType tileType = level[x][y];
-        Point p = new Point();
+        TileType tileType = level.get(x, y);
 
         if (tileType == TileType.FOOD1) {
             player.grabFood(TileType.FOOD1.ordinal() - 2);
-            level[x][y] = TileType.FLOOR1;
+            setTile(x, y, TileType.FLOOR1);
         } else if (tileType == TileType.FOOD2) {
             player.grabFood(TileType.FOOD2.ordinal() - 2);
-            level[x][y] = TileType.FLOOR1;
+            setTile(x, y, TileType.FLOOR1);
         } else if (tileType == TileType.FOOD3) {
             player.grabFood(TileType.FOOD3.ordinal() - 2);
-            level[x][y] = TileType.FLOOR1;
+            setTile(x, y, TileType.FLOOR1);
         } else if (player.hasFood()) {
-            for (Customer customer : customers) {
-                if (customer != null && customer.getX() == x && customer.getY() == y) {
-                    //check if food type matches the customer:
-                    deliverFood(customer);
-                    break;
-                }
+            int slot = customers.slotAt(x, y);
+            if (slot >= 0) {
+                //check if food type matches the customer:
+                deliverFood(slot);
             }
         }
-        p.x = x;
-        p.y = y;
-        spawnLocations.add(p);
+        if (level.is(Level.FLOOR, x, y)) {
+            spawnLocations.add(spawnLocations.cellOf(x, y));    //free again once the player moves on
+        }
         player.setPosition(x, y);
 
     }
 
     /**
-     * Moves a specific customer in the game. The method updates the X and Y
-     * attributes of the Customer object passed to the method, to set its new
-     * position.
-     *
-     * @param c The Customer that needs to be moved
+     * Rebuilds the table distance field if the level has changed since it was
+     * last built.
      */
-    private void moveCustomerTowardsTable(Customer customer) {
-        int x = customer.getX();
-        int y = customer.getY();
-
-        // Find the nearest empty TABLE tile
-        Point targetTable = findNearestEmptyTable(x, y);
-
-        // Calculate the distance to the target table in the X and Y directions
-        int xDistance = targetTable.x - x;
-        int yDistance = targetTable.y - y;
-
-        // Move the customer towards the target table
-        if (Math.abs(xDistance) > Math.abs(yDistance)) {
-            // Move in the X direction
-            if (xDistance < 0) {
-                // Move left
-                if (isValidMove(x - 1, y, true) && !isStuckInLoop(customer, x - 1, y)) {
-                    customer.setPosition(x - 1, y);
-                } else {
-                    // Change direction
-                    if (isValidMove(x, y - 1, true) && !isStuckInLoop(customer, x, y - 1)) {
-                        customer.setPosition(x, y - 1);
-                    } else if (isValidMove(x, y + 1, true) && !isStuckInLoop(customer, x, y + 1)) {
-                        customer.setPosition(x, y + 1);
-                    }
-                }
-            } else {
-                // Move right
-                if (isValidMove(x + 1, y, true) && !isStuckInLoop(customer, x + 1, y)) {
-                    customer.setPosition(x + 1, y);
-                } else {
-                    // Change direction
-                    if (isValidMove(x, y - 1, true) && !isStuckInLoop(customer, x, y - 1)) {
-                        customer.setPosition(x, y - 1);
-                    } else if (isValidMove(x, y + 1, true) && !isStuckInLoop(customer, x, y + 1)) {
-                        customer.setPosition(x, y + 1);
-                    }
-                }
-            }
-        } else {
-            // Move in the Y direction
-            if (yDistance < 0) {
-                // Move up
-                if (isValidMove(x, y - 1, true) && !isStuckInLoop(customer, x, y - 1)) {
-                    customer.setPosition(x, y - 1);
-                } else {
-                    // Change direction
-                    if (isValidMove(x - 1, y, true) && !isStuckInLoop(customer, x - 1, y)) {
-                        customer.setPosition(x - 1, y);
-                    } else if (isValidMove(x + 1, y, true) && !isStuckInLoop(customer, x + 1, y)) {
-                        customer.setPosition(x + 1, y);
-                    }
-                }
-            } else {
-                // Move down
-                if (isValidMove(x, y + 1, true) && !isStuckInLoop(customer, x, y + 1)) {
-                    customer.setPosition(x, y + 1);
-                } else {
-                    // Change direction
-                    if (isValidMove(x - 1, y, true) && !isStuckInLoop(customer, x - 1, y)) {
-                        customer.setPosition(x - 1, y);
-                    } else if (isValidMove(x + 1, y, true) && !isStuckInLoop(customer, x + 1, y)) {
-                        customer.setPosition(x + 1, y);
-                    }
-                }
-            }
-        }
-
-        // Update the previous position of the customer
-        customer.setPrevPosition(new Point(x, y));
-    }
-
-    private boolean isStuckInLoop(Customer customer, int newX, int newY) {
-        Point previousPosition = customer.getPrevPosition();
-        return previousPosition != null && previousPosition.x == newX && previousPosition.y == newY;
-    }
-
-    private Point findNearestEmptyTable(int startX, int startY) {
-        int closestDistance = Integer.MAX_VALUE;
-        Point closestTable = null;
-
-        for (int x = 0; x < GameEngine.LEVEL_WIDTH; x++) {
-            for (int y = 0; y < GameEngine.LEVEL_HEIGHT; y++) {
-                if (level[x][y] == TileType.TABLE && !isCustomerAt(x, y)) {
-                    int distance = Math.abs(startX - x) + Math.abs(startY - y);
-                    if (distance < closestDistance) {
-                        closestDistance = distance;
-                        closestTable = new Point(x, y);
-                    }
-                }
-            }
-        }
-
-        // If no empty table found return current position as fallback
-        if (closestTable == null) {
-            closestTable = new Point(startX, startY);
-        }
-
-        return closestTable;
-    }
-
-    private boolean isCustomerAt(int x, int y) {
-        for (Customer customer : customers) {
-            if (customer != null && customer.getX() == x && customer.getY() == y) {
-                return true;
-            }
+    void updateTableDistances() {
+        if (tableDistancesVersion != levelVersion) {
+            tableDistances.build(level);
+            tableDistancesVersion = levelVersion;
         }
-        return false;
     }
 
-//    private void moveCustomer(Customer customer) {
-//        int x = customer.getX();
-//        int y = customer.getY();
-//
-//        // Randomly choose a direction
-//        int direction = rng.nextInt(4);
-//
-//        // Move the customer based on the chosen direction
-//        switch (direction) {
-//            case 0: // Move up
-//                if (isValidMove(x, y - 1, true)) {
-//                    customer.setPosition(x, y - 1);
-//                }
-//                break;
-//            case 1: // Move down
-//                if (isValidMove(x, y + 1, true)) {
-//                    customer.setPosition(x, y + 1);
-//                }
-//                break;
-//            case 2: // Move left
-//                if (isValidMove(x - 1, y, true)) {
-//                    customer.setPosition(x - 1, y);
-//                }
-//                break;
-//            case 3: // Move right
-//                if (isValidMove(x + 1, y, true)) {
-//                    customer.setPosition(x + 1, y);
-//                }
-//                break;
-//            default:
-//                break;
-//        }
-//    }
     /**
-     * Moves all customers on the current level. This method iterates over all
-     * elements of the customers array (e.g. using a for loop) and checks if
-     * each one is null (using an if statement inside that for loop). For every
-     * element of the array that is NOT null, this method calls the moveCustomer
-     * method and passes it the current array element (i.e. the current customer
-     * object being used in the loop).
+     * Moves all customers on the current level. Every customer that is not
+     * close to the player and not already next to a table takes one step
+     * downhill in the table distance field, i.e. to the free neighbouring tile
+     * that is closest to a table, and stays where it is if no neighbouring
+     * tile is closer. Customers move in slot order, so a customer cannot step
+     * onto a tile that a customer in an earlier slot has just moved to. See
+     * CustomerPlanner, which can plan the moves on several threads with the
+     * same result.
      */
-    private void moveAllCustomers() {
-        //YOUR CODE HERE
-        for (Customer customer : customers) {
-            if (customer != null && handle_customers(customer) && !isNextToTable(customer)) {
-//                moveCustomer(customer);  task 10 removed it 
-                moveCustomerTowardsTable(customer);
-
-            }
-        }
-    }
-
-    private boolean handle_customers(Customer customer) {
-        // check if player is 3 tiles away from player should stop
-        // or that the player is already on a table 
-        return !((Math.abs(player.getX() - customer.getX()) < 3 && Math.abs(player.getY() - customer.getY()) < 3));
-    }
-
-    private boolean isCustomerOnTable(Customer customer) {
-        int x = customer.getX();
-        int y = customer.getY();
-        return level[x][y] == TileType.TABLE;
+    void moveAllCustomers() {
+        long start = System.nanoTime();
+        updateTableDistances();
+        int moved = planner.moveAll(level, player.getX(), player.getY(), parallelCustomers);
+        metrics.recordCustomerMove(System.nanoTime() - start, planner.getQueries(), moved);
     }
 
     /**
-     * Processes the customers array to find any Customer in the array that has
-     * been fed (i.e. given food by the player of the type they wanted). Any
-     * Customer in the array with a "fed" attribute value of true should be set
-     * to null; when drawing or moving customers the null elements in the
-     * customers array are skipped, essentially removing them from the game.
+     * Removes every customer that has been fed (i.e. given food by the player
+     * of the type they wanted) from the customers store, essentially removing
+     * them from the game. The remaining customers are packed together so
+     * later loops have no gaps to skip.
      */
     private void cleanFedCustomers() {
-        for (int i = 0; i < customers.length; i++) {
-            if (customers[i] != null && customers[i].beenFed()) {
-                customers[i] = null;
-            }
-        }
+        customers.removeFed();
     }
 
     /**
@@ -737,24 +845,25 @@ public class GameEngine {
      *
      * This method should increase the current level number, create a new level
      * by calling the generateLevel method and setting the level attribute using
-     * the returned 2D array, add new Customers, and finally place the player in
+     * the returned Level, add new Customers, and finally place the player in
      * the new level.
      *
      * A second version of this method in a later task should also find suitable
      * positions to add customers and the player using the spawnLocations
      * ArrayList and code in the getSpawns method.
+     *
+     * If levels are being built ahead (see setLevelsAhead) the new level is
+     * usually ready already, so this only swaps it in.
      */
     private void nextLevel() {
         levelNumber++; // Increment the levelNumber attribute
-        player.changeStamina(150 - (levelNumber * 2));
-        // Generate a new level and assign it to the level attribute
-        level = generateLevel();
-
-        // Add customers to the new level and assign the resulting array to the customers attribute
-        customers = addCustomers();
+        player.changeStamina(rules.getLevelStaminaBonus(levelNumber));
+        // Get the new level and set the level, spawn locations and customers from it
+        PreparedLevel next = takeLevel();
+        enterLevel(next);
 
         // Place the player in the new level
-        placePlayer();
+        placePlayer(next);
     }
 
     /**
@@ -766,7 +875,9 @@ public class GameEngine {
      * in a game level by choosing a position from the spawnLocations ArrayList,
      * removing the spawn position as it is used. The method sets the players
      * position in the level by calling its setPosition method with the x and y
-     * values of the Point taken from the spawnLocations ArrayList.
+     * values of the location taken from the spawnLocations ArrayList.
+     *
+     * @param next the level the player is placed in
      */
 //    private void placePlayer() {
 //        int playerX;
@@ -774,14 +885,12 @@ public class GameEngine {
 //        do {
 //            playerX = rng.nextInt(GameEngine.LEVEL_WIDTH);
 //            playerY = rng.nextInt(GameEngine.LEVEL_HEIGHT);
-//        } while (level[playerX][playerY] != TileType.FLOOR1 && level[playerX][playerY] != TileType.FLOOR2);
+//        } while (level.get(playerX, playerY) != TileType.FLOOR1 && level.get(playerX, playerY) != TileType.FLOOR2);
 //
 //        player.setPosition(playerX, playerY);
 //    }
-    private void placePlayer() {
-        Point position = spawnLocations.remove(rng.nextInt(spawnLocations.size())); // Remove and get a random spawn location
-
-        player.setPosition(position.x, position.y);
+    private void placePlayer(PreparedLevel next) {
+        player.setPosition(next.playerX, next.playerY);
     }
 
     /**
@@ -801,41 +910,48 @@ public class GameEngine {
     }
 
     /**
-     * This method is automatically called by doTurn, and it should reduce the
-     * patience value for all Customer objects in the customers array by a small
-     * fixed amount, by using a for loop that iterates over the customers array,
-     * checking for non-null elements and calling an appropriate method on any
-     * non-null objects in the array.
+     * This method is automatically called by doTurn, and it reduces the
+     * patience value for all customers in the customers store by a small fixed
+     * amount: 1 for customers next to a table and 3 for all others.
      */
     private void reduceCustomerPatience() {
-        for (Customer customer : customers) {
-            if (customer != null) {
-                if (isNextToTable(customer)) {
-                    customer.changePatience(-1); // Reduce patience by 1 if next to a table
-                } else {
-                    customer.changePatience(-3); // Reduce patience by 2 if not next to a table
-                }
-            }
-        }
+        planner.reduceAllPatience(level, parallelCustomers);
     }
 
-    private boolean isNextToTable(Customer customer) {
-        int x = customer.getX();
-        int y = customer.getY();
-
-        // Check if any adjacent tile is a table
-        if (isTable(x - 1, y) || isTable(x + 1, y) || isTable(x, y - 1) || isTable(x, y + 1)) {
-            return true;
+    /**
+     * Plays one turn for a command from the player: moves the player (unless
+     * the command is GameLoop.NO_MOVE) and then calls doTurn. If the game is
+     * being recorded the command is added to the InputLog first. Everything
+     * that drives the game from outside should go through this method, so
+     * that a recording holds every turn.
+     *
+     * @param command U, D, L or R to move the player and play a turn, or
+     * GameLoop.NO_MOVE to only play a turn
+     */
+    public void playTurn(char command) {
+        if (inputLog != null) {
+            inputLog.record(command);
         }
-
-        return false;
+        if (command != GameLoop.NO_MOVE) {
+            movePlayer(command);
+        }
+        doTurn();
     }
 
-    private boolean isTable(int x, int y) {
-        if (x >= 0 && x < LEVEL_WIDTH && y >= 0 && y < LEVEL_HEIGHT && level[x][y] == TileType.TABLE) {
-            return true;
+    /**
+     * Starts recording this game. The seed, the level size and every turn
+     * played through playTurn are written to the returned InputLog, which is
+     * enough to play the game again with InputLog.replay.
+     *
+     * @return the log the game is recorded in
+     * @throws IllegalStateException if the game has already been started
+     */
+    public InputLog startRecording() {
+        if (level != null) {
+            throw new IllegalStateException("Recording must start before the game is started");
         }
-        return false;
+        inputLog = new InputLog(seed, levelWidth, levelHeight);
+        return inputLog;
     }
 
     /**
@@ -855,6 +971,16 @@ public class GameEngine {
      * out.
      */
     public void doTurn() {
+        long start = System.nanoTime();
+        turn();
+        metrics.recordTurn(System.nanoTime() - start);
+    }
+
+    /**
+     * Plays a turn for doTurn, and the first turn of the next level if every
+     * customer has been fed.
+     */
+    private void turn() {
         turnNumber++;
 
         if (turnNumber % 10 == 0) {
@@ -865,39 +991,21 @@ public class GameEngine {
             reduceCustomerPatience();
         }
         // Update the player's stamina if < fixed amount =-15
-        if (player.getStamina() <= 15) {
+        if (player.getStamina() <= rules.getMoveStamina()) {
             player.changeStamina(1);
             accelerate++;
         }
-        if (accelerate % 15 == 0 && player.getStamina() < 20) {
-            player.changeStamina(600);
+        if (accelerate % 15 == 0 && player.getStamina() < rules.getRefillThreshold()) {
+            player.changeStamina(rules.getMaxStamina());
             accelerate = 0;
         }
-        gui.updateDisplay(level, player, customers);
-
-        // Check if all customers have been fed or no customers remain
-        boolean allCustomersFed = true;
-        for (Customer customer : customers) {
-            if (customer != null && !customer.beenFed()) {
-                allCustomersFed = false;
-                break;
-            }
-        }
+        gui.updateDisplay(level, player, customers, score);
 
         // Call nextLevel() if all customers have been fed or no customers remain
-        if (allCustomersFed || areAllCustomersNull()) {
+        if (customers.allFed()) {
             nextLevel();
-            doTurn();
-        }
-    }
-
-    private boolean areAllCustomersNull() {
-        for (Customer customer : customers) {
-            if (customer != null) {
-                return false;
-            }
+            turn();
         }
-        return true;
     }
 
     /**
@@ -907,10 +1015,285 @@ public class GameEngine {
      * customers.
      */
     public void startGame() {
-        level = generateLevel();
-        spawnLocations = getSpawns();
-        customers = addCustomers();
-        player = createPlayer();
-        gui.updateDisplay(level, player, customers);
+        if (inputLog != null) {
+            inputLog.setStartLevel(levelNumber);
+        }
+        PreparedLevel next = takeLevel();
+        enterLevel(next);
+        player = createPlayer(next);
+        gui.updateDisplay(level, player, customers, score);
+    }
+
+    /**
+     * Starts a game at the given level number instead of level 1. This is used
+     * by the benchmarks to measure levels with more customers.
+     *
+     * @param startLevel the level number to start the game at
+     */
+    void startGame(int startLevel) {
+        levelNumber = startLevel;
+        startGame();
+    }
+
+    /**
+     * Copies the state of the game into a GameState, so it can be written to
+     * a file with GameState.write. This only copies arrays, and only the
+     * chunks of the level that changed since the last copy into the same
+     * GameState, so it is cheap enough to call on the game thread between
+     * turns.
+     *
+     * @param state the state to copy into, usually reused from the last save
+     */
+    void saveState(GameState state) {
+        state.width = levelWidth;
+        state.height = levelHeight;
+        state.seed = seed;
+        state.randomState = rng.getState();
+        state.levelNumber = levelNumber;
+        state.turnNumber = turnNumber;
+        state.accelerate = accelerate;
+        state.score = score;
+        if (level == null) {
+            state.level = null;
+        } else {
+            if (state.level == null || state.level.getWidth() != levelWidth
+                    || state.level.getHeight() != levelHeight) {
+                state.level = new Level(levelWidth, levelHeight);
+            }
+            state.level.copyFrom(level);
+        }
+        state.hasPlayer = player != null;
+        if (player != null) {
+            state.playerX = player.getX();
+            state.playerY = player.getY();
+            state.stamina = player.getStamina();
+            state.maxStamina = player.getMaxStamina();
+            state.carriedFoodType = player.getCarriedFoodType();
+            state.carryingFood = player.hasFood();
+            state.breaking = player.isbreaking();
+        }
+        int count = customers.size();
+        state.ensureCustomers(count);
+        state.customerCount = count;
+        System.arraycopy(customers.x, 0, state.customerX, 0, count);
+        System.arraycopy(customers.y, 0, state.customerY, 0, count);
+        System.arraycopy(customers.patience, 0, state.patience, 0, count);
+        System.arraycopy(customers.maxPatience, 0, state.maxPatience, 0, count);
+        System.arraycopy(customers.foodWanted, 0, state.foodWanted, 0, count);
+        System.arraycopy(customers.state, 0, state.customerState, 0, count);
+        count = spawnLocations == null ? 0 : spawnLocations.size();
+        state.ensureSpawns(count);
+        state.spawnCount = count;
+        for (int i = 0; i < count; i++) {
+            int cell = spawnLocations.get(i);
+            state.spawns[2 * i] = spawnLocations.xOf(cell);
+            state.spawns[2 * i + 1] = spawnLocations.yOf(cell);
+        }
+    }
+
+    /**
+     * Replaces the game with a saved one. The engine must have been created
+     * with the same level size, and should have been created with the same
+     * seed so that getSeed and new recordings match the saved game.
+     *
+     * @param state the state to load, usually from GameState.read
+     * @throws IllegalArgumentException if the state is for a different level
+     * size
+     */
+    void loadState(GameState state) {
+        if (state.width != levelWidth || state.height != levelHeight) {
+            throw new IllegalArgumentException("Saved game is " + state.width + "x" + state.height
+                    + ", engine is " + levelWidth + "x" + levelHeight);
+        }
+        rng.setState(state.randomState);
+        levelNumber = state.levelNumber;
+        turnNumber = state.turnNumber;
+        accelerate = state.accelerate;
+        score = state.score;
+        if (state.level == null) {
+            level = null;
+            levelVersion++;
+        } else {
+            Level copy = new Level(levelWidth, levelHeight);
+            copy.copyFrom(state.level);
+            setLevel(copy);
+        }
+        player = null;
+        if (state.hasPlayer) {
+            player = new Player(state.maxStamina, state.playerX, state.playerY);
+            player.changeStamina(state.stamina - state.maxStamina);
+            if (state.carryingFood) {
+                player.grabFood(state.carriedFoodType);
+            }
+            player.setIsBreaking(state.breaking);
+        }
+        occupancy.clear();
+        customers.clear();
+        for (int i = 0; i < state.customerCount; i++) {
+            customers.add(state.customerX[i], state.customerY[i], state.maxPatience[i], state.foodWanted[i]);
+            customers.changePatience(i, state.patience[i] - state.maxPatience[i]);
+            if (state.customerState[i] == CustomerStore.FED) {
+                customers.feed(i);
+            }
+        }
+        spawnLocations = new CellSet(levelWidth, levelHeight);
+        for (int i = 0; i < state.spawnCount; i++) {
+            spawnLocations.add(spawnLocations.cellOf(state.spawns[2 * i], state.spawns[2 * i + 1]));
+        }
+        if (pipeline != null) {
+            pipeline.start(levelNumber + 1);
+        }
+        if (level != null && player != null) {
+            gui.updateDisplay(level, player, customers, score);
+        }
+    }
+
+    /**
+     * Saves the game to a file. Must be called on the thread that plays the
+     * turns, between turns; see Autosaver for saving without waiting for the
+     * file to be written.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        GameState state = new GameState();
+        saveState(state);
+        state.write(file);
+    }
+
+    /**
+     * Loads a game saved with save or by an Autosaver, replacing the current
+     * game.
+     *
+     * @param file the file to read
+     * @throws IOException if the file cannot be read, does not hold a saved
+     * game or holds a game of a different level size
+     */
+    public void load(File file) throws IOException {
+        GameState state = GameState.read(file);
+        if (state.width != levelWidth || state.height != levelHeight) {
+            throw new IOException("Saved game is " + state.width + "x" + state.height
+                    + ", engine is " + levelWidth + "x" + levelHeight);
+        }
+        loadState(state);
+    }
+
+    /**
+     * Turns the parallel customer update on or off. With it on, customer
+     * moves and patience are worked out on several threads when there are at
+     * least CustomerPlanner.PARALLEL_THRESHOLD customers; the results are
+     * exactly the same as with it off.
+     *
+     * @param parallel true to use several threads for large crowds
+     */
+    public void setParallelCustomers(boolean parallel) {
+        parallelCustomers = parallel;
+    }
+
+    /**
+     * Builds levels ahead on a background thread while the current level is
+     * played, so clearing a level only has to swap in the next one instead of
+     * building it during the turn. The game plays out exactly the same
+     * either way. Must be called before the game is started or loaded.
+     *
+     * @param levels the number of levels to build ahead, or 0 to build each
+     * level when it is reached (the default)
+     * @throws IllegalStateException if the game has already been started
+     */
+    public void setLevelsAhead(int levels) {
+        if (level != null) {
+            throw new IllegalStateException("Levels ahead must be set before the game is started");
+        }
+        if (pipeline != null) {
+            pipeline.close();
+            pipeline = null;
+        }
+        if (levels > 0) {
+            final LevelConnector builderConnector = new LevelConnector(levelWidth, levelHeight);
+            pipeline = new LevelPipeline(number -> prepareLevel(number, builderConnector), levels);
+        }
+    }
+
+    /**
+     * Returns the seed of the random number generator
+     *
+     * @return the seed this engine was created with
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the rules this engine plays with
+     *
+     * @return the rules given to the constructor, or GameRules.DEFAULT
+     */
+    public GameRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns the performance metrics of this engine, which the GUI can draw
+     * and which can be registered with JMX
+     *
+     * @return the metrics
+     */
+    public PerfMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the tiles of the current level
+     *
+     * @return the current level
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the current Player object
+     *
+     * @return the player, or null if the game has not been started
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns the customers in the current level
+     *
+     * @return the customers store
+     */
+    public CustomerStore getCustomers() {
+        return customers;
+    }
+
+    /**
+     * Returns the current level number
+     *
+     * @return the level number, starting at 1
+     */
+    public int getLevelNumber() {
+        return levelNumber;
+    }
+
+    /**
+     * Returns the current score
+     *
+     * @return the score of this game
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the current turn number
+     *
+     * @return the number of turns played so far
+     */
+    public int getTurnNumber() {
+        return turnNumber;
     }
 }
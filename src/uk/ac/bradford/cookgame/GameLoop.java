@@ -0,0 +1,165 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The GameLoop class runs a GameEngine on its own thread, so that the Swing
+ * event thread only has to pass on key presses and draw frames. Key presses
+ * are put into a small bounded queue by the InputHandler and the loop takes
+ * one command from the queue on each tick, at a fixed rate of TICKS_PER_SECOND.
+ * If the queue is full new key presses are dropped, so holding a key down can
+ * never build up a backlog of moves.
+ *
+ * In real-time mode the loop also plays a turn by itself whenever no key has
+ * been pressed for a while, so customers keep moving and losing patience even
+ * if the player does nothing.
+ *
+ * @author prtrundl
+ */
+public class GameLoop implements Runnable {
+
+    /**
+     * The number of ticks the loop runs per second
+     */
+    public static final int TICKS_PER_SECOND = 60;
+
+    /**
+     * The maximum number of key presses waiting to be processed
+     */
+    public static final int INPUT_QUEUE_SIZE = 4;
+
+    /**
+     * The command for a key press that plays a turn without moving the player
+     */
+    public static final char NO_MOVE = ' ';
+
+    /**
+     * The time without a key press after which a turn is played in real-time
+     * mode, as used by the Launcher
+     */
+    public static final int REAL_TIME_TURN_MILLIS = 250;
+
+    private static final long TICK_NANOS = 1000000000L / TICKS_PER_SECOND;
+
+    private final GameEngine engine;
+    private final ArrayBlockingQueue<Character> input = new ArrayBlockingQueue<>(INPUT_QUEUE_SIZE);
+
+    /**
+     * In real-time mode, the time without a key press after which a turn is
+     * played automatically. 0 turns real-time mode off.
+     */
+    private final long idleTurnNanos;
+
+    /**
+     * Saves the game every few turns, or null if autosave is off
+     */
+    private Autosaver autosaver;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Creates a GameLoop for an engine, with real-time mode turned off.
+     *
+     * @param engine the GameEngine to run
+     */
+    public GameLoop(GameEngine engine) {
+        this(engine, 0);
+    }
+
+    /**
+     * Creates a GameLoop for an engine.
+     *
+     * @param engine the GameEngine to run
+     * @param idleTurnMillis if greater than 0, real-time mode is turned on and
+     * a turn is played after this many milliseconds without a key press
+     */
+    public GameLoop(GameEngine engine, int idleTurnMillis) {
+        this.engine = engine;
+        this.idleTurnNanos = idleTurnMillis * 1000000L;
+    }
+
+    /**
+     * Turns on autosave. Must be called before start.
+     *
+     * @param autosaver the Autosaver to call after every turn
+     */
+    public void setAutosaver(Autosaver autosaver) {
+        this.autosaver = autosaver;
+    }
+
+    /**
+     * Starts the game, unless the engine already has a game (e.g. one loaded
+     * from a save file), and the loop thread.
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "game-loop");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the loop thread and waits for it to finish.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join();
+            thread = null;
+        }
+    }
+
+    /**
+     * Queues a command to be processed on the loop thread. Safe to call from
+     * any thread.
+     *
+     * @param command U, D, L or R to move the player and play a turn, or
+     * NO_MOVE to only play a turn
+     * @return true if the command was queued, false if the queue was full and
+     * the command was dropped
+     */
+    public boolean offer(char command) {
+        return input.offer(command);
+    }
+
+    /**
+     * The loop itself: starts the game, then processes at most one queued
+     * command per tick until stopped.
+     */
+    @Override
+    public void run() {
+        if (engine.getLevel() == null) {
+            engine.startGame();
+        }
+        long nextTick = System.nanoTime();
+        long lastTurn = nextTick;
+        while (running) {
+            long now = System.nanoTime();
+            Character command = input.poll();
+            if (command != null) {
+                engine.playTurn(command);
+                lastTurn = now;
+            } else if (idleTurnNanos > 0 && now - lastTurn >= idleTurnNanos) {
+                engine.playTurn(NO_MOVE);
+                lastTurn = now;
+            }
+            if (autosaver != null) {
+                autosaver.afterTurn(engine);
+            }
+
+            nextTick += TICK_NANOS;
+            long wait = nextTick - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (wait < -TICK_NANOS) {
+                nextTick = System.nanoTime();   //fell behind, don't try to catch up
+            }
+        }
+    }
+}
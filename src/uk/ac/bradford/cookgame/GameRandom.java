@@ -0,0 +1,105 @@
+package uk.ac.bradford.cookgame;
+
+/**
+ * The GameRandom class is the random number generator used by the GameEngine.
+ * It produces exactly the same numbers as java.util.SplittableRandom created
+ * with the same seed (the SplitMix64 algorithm), but its whole state is one
+ * long that can be read and set, so a saved game carries on with the same
+ * random numbers it would have had if it had never been saved.
+ *
+ * @author prtrundl
+ */
+class GameRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long state;
+
+    /**
+     * Creates a generator with the given seed
+     *
+     * @param seed the seed
+     */
+    GameRandom(long seed) {
+        state = seed;
+    }
+
+    /**
+     * Returns a generator for one of many separate streams of numbers from
+     * the same seed. Each stream gives different numbers to the others and
+     * to a generator created with just the seed.
+     *
+     * @param seed the seed
+     * @param stream the number of the stream, e.g. a level number
+     * @return a new generator at the start of the stream
+     */
+    static GameRandom forStream(long seed, long stream) {
+        return new GameRandom(mix64(seed ^ mix64((stream + 1) * GOLDEN_GAMMA)));
+    }
+
+    /**
+     * Returns the current state of the generator, see setState
+     *
+     * @return the state
+     */
+    long getState() {
+        return state;
+    }
+
+    /**
+     * Sets the state of the generator, so it carries on from where the
+     * generator that getState was called on was at the time.
+     *
+     * @param state a value returned by getState
+     */
+    void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Returns a random long
+     *
+     * @return a random long
+     */
+    long nextLong() {
+        return mix64(state += GOLDEN_GAMMA);
+    }
+
+    /**
+     * Returns a random int from 0 (inclusive) to bound (exclusive)
+     *
+     * @param bound the upper bound, which must be positive
+     * @return a random int from 0 to bound - 1
+     */
+    int nextInt(int bound) {
+        int r = mix32(state += GOLDEN_GAMMA);
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return r & m;       //power of two
+        }
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(state += GOLDEN_GAMMA) >>> 1) {
+            //reject values from the uneven top of the range
+        }
+        return r;
+    }
+
+    /**
+     * Returns a random double from 0.0 (inclusive) to 1.0 (exclusive)
+     *
+     * @return a random double
+     */
+    double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+}
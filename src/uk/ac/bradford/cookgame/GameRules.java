@@ -0,0 +1,241 @@
+package uk.ac.bradford.cookgame;
+
+/**
+ * The GameRules class holds the numbers that decide how hard the game is, so
+ * they can be changed without changing the GameEngine, e.g. by the
+ * BalanceRunner to try out different values. GameRules objects cannot be
+ * changed once they are created; DEFAULT holds the values the game is played
+ * with.
+ *
+ * @author prtrundl
+ */
+public class GameRules {
+
+    /**
+     * The rules the game is normally played with
+     */
+    public static final GameRules DEFAULT = new GameRules(600, 15, 5, 20, 150, 2, 150, 2, 1.5);
+
+    private final int maxStamina;
+    private final int moveStamina;
+    private final int moveCost;
+    private final int refillThreshold;
+    private final int baseLevelStamina;
+    private final int levelStaminaPerLevel;
+    private final int basePatience;
+    private final int patiencePerLevel;
+    private final double customersPerLevel;
+
+    /**
+     * Creates a set of rules.
+     *
+     * @param maxStamina the maximum stamina of the player
+     * @param moveStamina the stamina the player needs to be able to move
+     * @param moveCost the stamina each move costs
+     * @param refillThreshold the stamina below which a tired player can be
+     * refilled to full (see getRefillThreshold)
+     * @param baseLevelStamina the stamina given to the player for reaching a
+     * new level, before it is reduced by levelStaminaPerLevel for each level
+     * @param levelStaminaPerLevel how much less stamina reaching each level
+     * gives
+     * @param basePatience the patience of a customer, before it is reduced by
+     * patiencePerLevel for each level
+     * @param patiencePerLevel how much less patience customers have in each
+     * level
+     * @param customersPerLevel the number of customers in a level is the level
+     * number times this, rounded down
+     */
+    public GameRules(int maxStamina, int moveStamina, int moveCost, int refillThreshold, int baseLevelStamina,
+            int levelStaminaPerLevel, int basePatience, int patiencePerLevel, double customersPerLevel) {
+        this.maxStamina = maxStamina;
+        this.moveStamina = moveStamina;
+        this.moveCost = moveCost;
+        this.refillThreshold = refillThreshold;
+        this.baseLevelStamina = baseLevelStamina;
+        this.levelStaminaPerLevel = levelStaminaPerLevel;
+        this.basePatience = basePatience;
+        this.patiencePerLevel = patiencePerLevel;
+        this.customersPerLevel = customersPerLevel;
+    }
+
+    /**
+     * Returns the maximum stamina of the player
+     *
+     * @return the maximum stamina
+     */
+    public int getMaxStamina() {
+        return maxStamina;
+    }
+
+    /**
+     * Returns the stamina the player needs to be able to move
+     *
+     * @return the lowest stamina the player can move with
+     */
+    public int getMoveStamina() {
+        return moveStamina;
+    }
+
+    /**
+     * Returns the stamina each move costs
+     *
+     * @return the stamina taken from the player for a move
+     */
+    public int getMoveCost() {
+        return moveCost;
+    }
+
+    /**
+     * Returns the stamina below which the player is given the maximum stamina
+     * again, after resting for a while when too tired to move (see
+     * GameEngine.turn).
+     *
+     * @return the refill threshold
+     */
+    public int getRefillThreshold() {
+        return refillThreshold;
+    }
+
+    /**
+     * Returns the stamina given to the player for reaching a level
+     *
+     * @param levelNumber the number of the level reached
+     * @return the stamina added to the player's stamina
+     */
+    public int getLevelStaminaBonus(int levelNumber) {
+        return baseLevelStamina - levelNumber * levelStaminaPerLevel;
+    }
+
+    /**
+     * Returns the patience of a customer in a level, before any reduction for
+     * customers that want the VIP food
+     *
+     * @param levelNumber the level number
+     * @return the maximum patience of a customer in that level
+     */
+    public int getPatience(int levelNumber) {
+        return basePatience - levelNumber * patiencePerLevel;
+    }
+
+    /**
+     * Returns the number of customers in a level
+     *
+     * @param levelNumber the level number
+     * @return the number of customers in that level
+     */
+    public int getCustomerCount(int levelNumber) {
+        return (int) Math.floor(levelNumber * customersPerLevel);
+    }
+
+    /**
+     * Returns a copy of these rules with the maximum stamina changed. The
+     * with methods are used to build the grids of rules tried by the
+     * BalanceRunner.
+     *
+     * @param value the new maximum stamina
+     * @return the new rules
+     */
+    public GameRules withMaxStamina(int value) {
+        return new GameRules(value, moveStamina, moveCost, refillThreshold, baseLevelStamina, levelStaminaPerLevel,
+                basePatience, patiencePerLevel, customersPerLevel);
+    }
+
+    /**
+     * Returns a copy of these rules with the stamina needed to move changed.
+     *
+     * @param value the new stamina needed to move
+     * @return the new rules
+     */
+    public GameRules withMoveStamina(int value) {
+        return new GameRules(maxStamina, value, moveCost, refillThreshold, baseLevelStamina, levelStaminaPerLevel,
+                basePatience, patiencePerLevel, customersPerLevel);
+    }
+
+    /**
+     * Returns a copy of these rules with the move cost changed.
+     *
+     * @param value the new move cost
+     * @return the new rules
+     */
+    public GameRules withMoveCost(int value) {
+        return new GameRules(maxStamina, moveStamina, value, refillThreshold, baseLevelStamina, levelStaminaPerLevel,
+                basePatience, patiencePerLevel, customersPerLevel);
+    }
+
+    /**
+     * Returns a copy of these rules with the refill threshold changed.
+     *
+     * @param value the new refill threshold
+     * @return the new rules
+     */
+    public GameRules withRefillThreshold(int value) {
+        return new GameRules(maxStamina, moveStamina, moveCost, value, baseLevelStamina, levelStaminaPerLevel,
+                basePatience, patiencePerLevel, customersPerLevel);
+    }
+
+    /**
+     * Returns a copy of these rules with the stamina given for reaching a
+     * level changed, before the reduction for each level.
+     *
+     * @param value the new stamina for reaching a level
+     * @return the new rules
+     */
+    public GameRules withBaseLevelStamina(int value) {
+        return new GameRules(maxStamina, moveStamina, moveCost, refillThreshold, value, levelStaminaPerLevel,
+                basePatience, patiencePerLevel, customersPerLevel);
+    }
+
+    /**
+     * Returns a copy of these rules with how much less stamina reaching each
+     * level gives changed.
+     *
+     * @param value the new reduction for each level
+     * @return the new rules
+     */
+    public GameRules withLevelStaminaPerLevel(int value) {
+        return new GameRules(maxStamina, moveStamina, moveCost, refillThreshold, baseLevelStamina, value,
+                basePatience, patiencePerLevel, customersPerLevel);
+    }
+
+    /**
+     * Returns a copy of these rules with the base patience changed.
+     *
+     * @param value the new base patience
+     * @return the new rules
+     */
+    public GameRules withBasePatience(int value) {
+        return new GameRules(maxStamina, moveStamina, moveCost, refillThreshold, baseLevelStamina, levelStaminaPerLevel,
+                value, patiencePerLevel, customersPerLevel);
+    }
+
+    /**
+     * Returns a copy of these rules with how much less patience customers
+     * have in each level changed.
+     *
+     * @param value the new reduction for each level
+     * @return the new rules
+     */
+    public GameRules withPatiencePerLevel(int value) {
+        return new GameRules(maxStamina, moveStamina, moveCost, refillThreshold, baseLevelStamina,
+                levelStaminaPerLevel, basePatience, value, customersPerLevel);
+    }
+
+    /**
+     * Returns a copy of these rules with the number of customers per level
+     * changed.
+     *
+     * @param value the new number of customers per level
+     * @return the new rules
+     */
+    public GameRules withCustomersPerLevel(double value) {
+        return new GameRules(maxStamina, moveStamina, moveCost, refillThreshold, baseLevelStamina, levelStaminaPerLevel,
+                basePatience, patiencePerLevel, value);
+    }
+
+    @Override
+    public String toString() {
+        return "stamina=" + maxStamina + " move=" + moveStamina + "/" + moveCost + " refill<" + refillThreshold
+                + " level+" + baseLevelStamina + "-" + levelStaminaPerLevel + "*level patience=" + basePatience
+                + "-" + patiencePerLevel + "*level customers=" + customersPerLevel + "*level";
+    }
+}
@@ -0,0 +1,141 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A GameSession is one headless game run by a SessionHost, for one player or
+ * bot. Commands are queued with offer from any thread and played by the host,
+ * at most one per tick, in the same way as the GameLoop plays key presses.
+ *
+ * The engine of a session is only ever used by one thread at a time: the
+ * thread that opened it until it is added to the host, and then the host's
+ * workers, one tick at a time. The score, level and turn number are published
+ * after every tick so other threads can read them while the host is running.
+ *
+ * @author prtrundl
+ */
+public class GameSession {
+
+    private final int id;
+    private final GameEngine engine;
+    private final ArrayBlockingQueue<Character> input = new ArrayBlockingQueue<>(GameLoop.INPUT_QUEUE_SIZE);
+
+    private volatile int score;
+    private volatile int levelNumber;
+    private volatile int turnNumber;
+
+    /**
+     * The exception that stopped this session, or null if it is still running
+     */
+    private volatile RuntimeException failure;
+
+    /**
+     * Creates a session for an engine with a started game. Sessions are
+     * created by SessionHost.open.
+     *
+     * @param id the id of the session in its host
+     * @param engine the engine to run
+     */
+    GameSession(int id, GameEngine engine) {
+        this.id = id;
+        this.engine = engine;
+        publish();
+    }
+
+    /**
+     * Returns the id of this session
+     *
+     * @return the id given by the host, unique within the host
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Queues a command to be played on the next tick of the host. Safe to
+     * call from any thread.
+     *
+     * @param command U, D, L or R to move the player and play a turn, or
+     * GameLoop.NO_MOVE to only play a turn
+     * @return true if the command was queued, false if the queue was full and
+     * the command was dropped
+     */
+    public boolean offer(char command) {
+        return input.offer(command);
+    }
+
+    /**
+     * Plays the next queued command, if there is one. Called by the host on
+     * one of its workers.
+     *
+     * @return true if a turn was played
+     */
+    boolean tick() {
+        Character command = input.poll();
+        if (command == null) {
+            return false;
+        }
+        try {
+            engine.playTurn(command);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        }
+        publish();
+        return true;
+    }
+
+    private void publish() {
+        score = engine.getScore();
+        levelNumber = engine.getLevelNumber();
+        turnNumber = engine.getTurnNumber();
+    }
+
+    /**
+     * Returns the score after the last turn played
+     *
+     * @return the score of this session's game
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the level number after the last turn played
+     *
+     * @return the level number, starting at 1
+     */
+    public int getLevelNumber() {
+        return levelNumber;
+    }
+
+    /**
+     * Returns the number of turns played so far
+     *
+     * @return the turn number
+     */
+    public int getTurnNumber() {
+        return turnNumber;
+    }
+
+    /**
+     * Returns the exception that stopped this session
+     *
+     * @return the exception thrown by the engine, or null if the session has
+     * not failed
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns the engine of this session. The engine must only be used while
+     * the host is not ticking, e.g. before the session is started or after
+     * SessionHost.stop.
+     *
+     * @return the engine
+     */
+    public GameEngine getEngine() {
+        return engine;
+    }
+}
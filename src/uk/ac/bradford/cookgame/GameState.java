@@ -0,0 +1,351 @@
+package uk.ac.bradford.cookgame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A GameState is a copy of everything needed to carry on a game: the tiles of
+ * the level, the player, the customers, the spawn positions, the counters of
+ * the GameEngine and the state of its random number generator. A game loaded
+ * from a GameState plays on exactly as the saved game would have.
+ *
+ * Taking a copy (GameEngine.saveState) only copies arrays, and only the chunks
+ * of the level that changed since the last copy into the same GameState, so
+ * it is cheap enough to do on the game thread between two turns. Writing the
+ * copy to a file can then be left to another thread, see Autosaver.
+ *
+ * The save file format is, in big endian order:
+ * <pre>
+ * int    magic   ("CGSV")
+ * short  version (1)
+ * int    level width
+ * int    level height
+ * long   seed
+ * long   random number generator state
+ * int    level number
+ * int    turn number
+ * int    accelerate
+ * int    score
+ * byte   1 if there is a player, 0 if not, followed by:
+ *        int x, int y, int stamina, int max stamina, int carried food type,
+ *        byte carrying food, byte breaking
+ * int    number of customers, followed for each customer by:
+ *        int x, int y, int patience, int max patience, byte food wanted,
+ *        byte state
+ * int    number of spawn positions, followed by int x, int y of each one
+ * int    number of stored tiles, followed by one byte per stored tile (see
+ *        Level.writeTiles)
+ * </pre>
+ *
+ * @author prtrundl
+ */
+class GameState {
+
+    private static final int MAGIC = 0x43475356;    //"CGSV"
+    private static final short VERSION = 1;
+
+    /**
+     * The highest food type a customer can want or the player can carry (the
+     * VIP food)
+     */
+    private static final int MAX_FOOD_TYPE = 4;
+
+    int width;
+    int height;
+    long seed;
+    long randomState;
+    int levelNumber;
+    int turnNumber;
+    int accelerate;
+    int score;
+
+    /**
+     * A copy of the level, or null if the game had not been started
+     */
+    Level level;
+
+    boolean hasPlayer;
+    int playerX;
+    int playerY;
+    int stamina;
+    int maxStamina;
+    int carriedFoodType;
+    boolean carryingFood;
+    boolean breaking;
+
+    /**
+     * The customers, in slot order. Only the first customerCount entries of
+     * each array are used.
+     */
+    int customerCount;
+    int[] customerX = new int[0];
+    int[] customerY = new int[0];
+    int[] patience = new int[0];
+    int[] maxPatience = new int[0];
+    int[] foodWanted = new int[0];
+    byte[] customerState = new byte[0];
+
+    /**
+     * The spawn positions as X, Y pairs, in the order the engine keeps them
+     * in so that a loaded game picks the same ones. Only the first
+     * 2 * spawnCount entries are used.
+     */
+    int spawnCount;
+    int[] spawns = new int[0];
+
+    /**
+     * Reusable buffer for write
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Returns the number of bytes this state takes in the save file format
+     */
+    private int encodedSize() {
+        return 4 + 2 + 4 + 4 + 8 + 8 + 4 * 4
+                + 1 + (hasPlayer ? 5 * 4 + 2 : 0)
+                + 4 + customerCount * (4 * 4 + 2)
+                + 4 + spawnCount * 8
+                + 4 + (level == null ? 0 : level.getStoredSize());
+    }
+
+    /**
+     * Writes this state to a file in the save file format. The state is
+     * written to a temporary file next to the target that is then renamed, so
+     * the target always holds a whole save, even if the game stops in the
+     * middle of a write.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    void write(File file) throws IOException {
+        int size = encodedSize();
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(size + size / 4);
+        }
+        buffer.clear();
+        encode(buffer);
+        buffer.flip();
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a state written by write.
+     *
+     * @param file the file to read
+     * @return the state
+     * @throws IOException if the file cannot be read, does not hold a saved
+     * game or holds values that are out of range
+     */
+    static GameState read(File file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Save file too large");
+            }
+            in = ByteBuffer.allocate((int) size);
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    throw new IOException("Save file truncated");
+                }
+            }
+        }
+        in.flip();
+        try {
+            return decode(in);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Save file is damaged", e);
+        }
+    }
+
+    private void encode(ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putInt(width);
+        out.putInt(height);
+        out.putLong(seed);
+        out.putLong(randomState);
+        out.putInt(levelNumber);
+        out.putInt(turnNumber);
+        out.putInt(accelerate);
+        out.putInt(score);
+        out.put((byte) (hasPlayer ? 1 : 0));
+        if (hasPlayer) {
+            out.putInt(playerX);
+            out.putInt(playerY);
+            out.putInt(stamina);
+            out.putInt(maxStamina);
+            out.putInt(carriedFoodType);
+            out.put((byte) (carryingFood ? 1 : 0));
+            out.put((byte) (breaking ? 1 : 0));
+        }
+        out.putInt(customerCount);
+        for (int i = 0; i < customerCount; i++) {
+            out.putInt(customerX[i]);
+            out.putInt(customerY[i]);
+            out.putInt(patience[i]);
+            out.putInt(maxPatience[i]);
+            out.put((byte) foodWanted[i]);
+            out.put(customerState[i]);
+        }
+        out.putInt(spawnCount);
+        for (int i = 0; i < spawnCount * 2; i++) {
+            out.putInt(spawns[i]);
+        }
+        if (level == null) {
+            out.putInt(0);
+        } else {
+            out.putInt(level.getStoredSize());
+            level.writeTiles(out);
+        }
+    }
+
+    private static GameState decode(ByteBuffer in) throws IOException {
+        if (in.remaining() < 6 || in.getInt() != MAGIC) {
+            throw new IOException("Not a saved game");
+        }
+        short version = in.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported save version " + version);
+        }
+        GameState state = new GameState();
+        state.width = in.getInt();
+        state.height = in.getInt();
+        if (state.width < GameEngine.LEVEL_WIDTH || state.height < GameEngine.LEVEL_HEIGHT
+                || (long) state.width * state.height > Integer.MAX_VALUE) {
+            throw new IOException("Bad level size " + state.width + "x" + state.height);
+        }
+        int tiles = state.width * state.height;
+        state.seed = in.getLong();
+        state.randomState = in.getLong();
+        state.levelNumber = in.getInt();
+        state.turnNumber = in.getInt();
+        state.accelerate = in.getInt();
+        state.score = in.getInt();
+        state.hasPlayer = in.get() != 0;
+        if (state.hasPlayer) {
+            state.playerX = in.getInt();
+            state.playerY = in.getInt();
+            state.stamina = in.getInt();
+            state.maxStamina = in.getInt();
+            state.carriedFoodType = in.getInt();
+            state.carryingFood = in.get() != 0;
+            state.breaking = in.get() != 0;
+            check(state.inLevel(state.playerX, state.playerY) && state.maxStamina >= 0
+                    && state.stamina >= 0 && state.stamina <= state.maxStamina
+                    && state.carriedFoodType >= 0 && state.carriedFoodType <= MAX_FOOD_TYPE);
+        }
+        int count = checkCount(in, 18, tiles);
+        state.ensureCustomers(count);
+        state.customerCount = count;
+        for (int i = 0; i < count; i++) {
+            state.customerX[i] = in.getInt();
+            state.customerY[i] = in.getInt();
+            state.patience[i] = in.getInt();
+            state.maxPatience[i] = in.getInt();
+            state.foodWanted[i] = in.get();
+            state.customerState[i] = in.get();
+            check(state.inLevel(state.customerX[i], state.customerY[i]) && state.patience[i] >= 0
+                    && state.foodWanted[i] >= 1 && state.foodWanted[i] <= MAX_FOOD_TYPE
+                    && (state.customerState[i] == CustomerStore.WAITING || state.customerState[i] == CustomerStore.FED));
+        }
+        count = checkCount(in, 8, tiles);
+        state.ensureSpawns(count);
+        state.spawnCount = count;
+        for (int i = 0; i < count * 2; i += 2) {
+            state.spawns[i] = in.getInt();
+            state.spawns[i + 1] = in.getInt();
+            check(state.inLevel(state.spawns[i], state.spawns[i + 1]));
+        }
+        int stored = in.getInt();
+        if (stored > in.remaining() || (stored > 0 && (long) state.width * state.height > stored)) {
+            throw new IOException("Save file is damaged");
+        }
+        if (stored > 0) {
+            Level level = new Level(state.width, state.height);
+            if (stored != level.getStoredSize()) {
+                throw new IOException("Level size does not match the tiles");
+            }
+            level.readTiles(in);
+            state.level = level;
+        }
+        return state;
+    }
+
+    /**
+     * Reads a count and checks that the buffer holds that many entries, and
+     * that there are no more of them than there are tiles in the level
+     */
+    private static int checkCount(ByteBuffer in, int entrySize, int tiles) throws IOException {
+        int count = in.getInt();
+        check(count >= 0 && count <= tiles && count <= in.remaining() / entrySize);
+        return count;
+    }
+
+    /**
+     * Throws the IOException for a damaged save file if a value read from it
+     * is out of range. A file can have the right structure and still hold
+     * values the game would fail on, e.g. a customer outside the level.
+     */
+    private static void check(boolean valid) throws IOException {
+        if (!valid) {
+            throw new IOException("Save file is damaged");
+        }
+    }
+
+    /**
+     * Returns true if a position is inside the level
+     */
+    private boolean inLevel(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * Makes sure the customer arrays can hold at least count customers
+     *
+     * @param count the number of customers
+     */
+    void ensureCustomers(int count) {
+        if (customerX.length < count) {
+            customerX = new int[count];
+            customerY = new int[count];
+            patience = new int[count];
+            maxPatience = new int[count];
+            foodWanted = new int[count];
+            customerState = new byte[count];
+        }
+    }
+
+    /**
+     * Makes sure the spawn array can hold at least count positions
+     *
+     * @param count the number of spawn positions
+     */
+    void ensureSpawns(int count) {
+        if (spawns.length < count * 2) {
+            spawns = new int[count * 2];
+        }
+    }
+}
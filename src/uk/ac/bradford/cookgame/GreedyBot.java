@@ -0,0 +1,101 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The GreedyBot class is the policy returned by BotPolicy.greedy. Every move
+ * it searches breadth first from the player for the nearest tile it wants to
+ * reach and takes the first step on the way there. Walls, broken walls and
+ * tables are walked around, and food tiles are only entered to pick up food.
+ * If nothing can be reached it moves randomly.
+ *
+ * @author prtrundl
+ */
+class GreedyBot implements BotPolicy {
+
+    private static final int[] DX = {0, 0, -1, 1};
+    private static final int[] DY = {-1, 1, 0, 0};
+
+    /**
+     * For each tile searched, the index of the first move (into MOVES) on the
+     * way to it, or -1 if it has not been reached. Reused between moves.
+     */
+    private byte[] firstMove = new byte[0];
+    private int[] queue = new int[0];
+
+    @Override
+    public char nextMove(GameEngine engine, Random random) {
+        Level level = engine.getLevel();
+        Player player = engine.getPlayer();
+        CustomerStore customers = engine.getCustomers();
+        int width = level.getWidth();
+        int size = width * level.getHeight();
+        if (firstMove.length < size) {
+            firstMove = new byte[size];
+            queue = new int[size];
+        }
+        Arrays.fill(firstMove, 0, size, (byte) -1);
+        int food = player.getCarriedFoodType();
+        boolean wanted = food != 0 && anyoneWants(customers, food);
+
+        int head = 0;
+        int tail = 0;
+        int start = player.getY() * width + player.getX();
+        firstMove[start] = 4;       //marks the start as reached
+        queue[tail++] = start;
+        while (head < tail) {
+            int i = queue[head++];
+            int x = i % width;
+            int y = i / width;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (!level.contains(nx, ny)) {
+                    continue;
+                }
+                int n = ny * width + nx;
+                if (firstMove[n] >= 0) {
+                    continue;
+                }
+                byte move = i == start ? (byte) d : firstMove[i];
+                if (isTarget(engine, level, customers, nx, ny, food, wanted)) {
+                    return MOVES[move];
+                }
+                if (level.is(Level.BLOCKING, nx, ny) || level.is(Level.BREAKABLE, nx, ny)
+                        || level.is(Level.FOOD, nx, ny)) {
+                    continue;
+                }
+                firstMove[n] = move;
+                queue[tail++] = n;
+            }
+        }
+        return MOVES[random.nextInt(MOVES.length)];
+    }
+
+    /**
+     * Returns true if a tile is where the bot wants to go: food if it is not
+     * carrying any, a customer that wants the food it carries, or the bin if
+     * nobody wants it.
+     */
+    private static boolean isTarget(GameEngine engine, Level level, CustomerStore customers, int x, int y,
+            int food, boolean wanted) {
+        if (food == 0) {
+            return level.is(Level.FOOD, x, y);
+        }
+        if (!wanted) {
+            return engine.isAtTrash(x, y);
+        }
+        int slot = customers.slotAt(x, y);
+        return slot >= 0 && !customers.isFed(slot) && customers.getFoodWanted(slot) == food;
+    }
+
+    private static boolean anyoneWants(CustomerStore customers, int food) {
+        for (int slot = 0; slot < customers.size(); slot++) {
+            if (!customers.isFed(slot) && customers.getFoodWanted(slot) == food) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
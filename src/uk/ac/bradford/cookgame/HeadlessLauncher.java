@@ -0,0 +1,56 @@
+package uk.ac.bradford.cookgame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * This class is an alternative entry point that plays a game with no window.
+ * It creates a headless GameEngine and drives it with random moves for a fixed
+ * number of turns, then prints how fast the turns were processed. It only uses
+ * the game rules, so it can be run on machines without a display.
+ *
+ * @author prtrundl
+ */
+public class HeadlessLauncher {
+
+    /**
+     * The moves that the random player picks from
+     */
+    private static final char[] MOVES = {'U', 'D', 'L', 'R'};
+
+    /**
+     * Runs a headless game.
+     *
+     * @param args optional number of turns to play (default 1000000),
+     * optionally followed by the level width and height in tiles, and then by
+     * a file to save a recording of the game to (see InputLog)
+     * @throws IOException if the recording cannot be saved
+     */
+    public static void main(String[] args) throws IOException {
+        int turns = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int width = args.length > 2 ? Integer.parseInt(args[1]) : GameEngine.LEVEL_WIDTH;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : GameEngine.LEVEL_HEIGHT;
+        Random random = new Random();
+        EventLog.GAME.setThreshold(EventLog.Severity.WARN);     //game events would bury the results
+
+        GameEngine eng = new GameEngine(GameDisplay.NONE, width, height);   //create engine with no display
+        InputLog log = args.length > 3 ? eng.startRecording() : null;
+        eng.startGame();
+        long start = System.nanoTime();
+        for (int i = 0; i < turns; i++) {
+            eng.playTurn(MOVES[random.nextInt(MOVES.length)]);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("Turns: " + turns + " in " + elapsed / 1000000 + " ms ("
+                + (long) (turns / (elapsed / 1e9)) + " turns/s)");
+        System.out.println("Level: " + eng.getLevelNumber() + " turn: " + eng.getTurnNumber()
+                + " score: " + eng.getScore() + " player: " + eng.getPlayer().getX() + ","
+                + eng.getPlayer().getY());
+        if (log != null) {
+            log.save(new File(args[3]));
+            System.out.println("Recorded seed " + log.getSeed() + " and " + log.size() + " turns to " + args[3]);
+        }
+    }
+}
@@ -6,25 +6,25 @@ import java.awt.event.KeyListener;
 /**
  * This class handles keyboard events (key presses) captured by a GameGUI object
  * that are passed to an instance of this class. The class is responsible for
- * calling methods in the GameEngine class that will update tiles, players and
- * customers for the various keystrokes that are handled.
+ * passing commands to the GameLoop, which calls methods in the GameEngine class
+ * on its own thread to update tiles, players and customers for the various
+ * keystrokes that are handled.
  *
  * @author prtrundl
  */
 public class InputHandler implements KeyListener {
 
-    GameEngine engine;      //GameEngine that this class calls methods from
+    GameLoop loop;          //GameLoop that this class passes commands to
 
     /**
      * Constructor that forms a connection between a GameInputHandler object and
-     * a GameEngine object. The GameEngine object registered here is the one
-     * that will have methods called to change player and customer positions
-     * etc.
+     * a GameLoop object. The GameLoop object registered here is the one that
+     * will have commands queued to change player and customer positions etc.
      *
-     * @param eng The GameEngine object that this GameInputHandler is linked to
+     * @param loop The GameLoop object that this GameInputHandler is linked to
      */
-    public InputHandler(GameEngine eng) {
-        engine = eng;
+    public InputHandler(GameLoop loop) {
+        this.loop = loop;
     }
 
     /**
@@ -37,10 +37,10 @@ public class InputHandler implements KeyListener {
     }
 
     /**
-     * Method to handle key presses captured by the GameGUI. The method calls
-     * the game engine doTurn method to process a game turn for ANY key press,
-     * but if the up, down, left or right arrow keys are pressed it also calls a
-     * method in the engine to update the game by moving the player.
+     * Method to handle key presses captured by the GameGUI. The method queues
+     * a command for the game loop, which processes a game turn for ANY key
+     * press, but if the up, down, left or right arrow keys are pressed it also
+     * moves the player. If the queue is full the key press is ignored.
      *
      * @param e A KeyEvent object generated when a keyboard key is pressed
      */
@@ -48,19 +48,21 @@ public class InputHandler implements KeyListener {
     public void keyPressed(KeyEvent e) {
         switch (e.getKeyCode()) {
             case KeyEvent.VK_LEFT:
-                engine.movePlayer('L');
+                loop.offer('L');
                 break;  //handle left arrow key
             case KeyEvent.VK_RIGHT:
-                engine.movePlayer('R');
+                loop.offer('R');
                 break;//handle right arrow
             case KeyEvent.VK_UP:
-                engine.movePlayer('U');
+                loop.offer('U');
                 break;      //handle up arrow
             case KeyEvent.VK_DOWN:
-                engine.movePlayer('D');
+                loop.offer('D');
                 break;  //handle down arrow
+            default:
+                loop.offer(GameLoop.NO_MOVE);   //any key press results in a turn
+                break;
         }
-        engine.doTurn();    //any key press will result in this method being called
     }
 
     /**
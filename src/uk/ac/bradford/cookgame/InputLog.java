@@ -0,0 +1,219 @@
+package uk.ac.bradford.cookgame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An InputLog is a recording of a game: the seed of the engine's random number
+ * generator, the level size and the command played on every turn. Because
+ * every random choice in the GameEngine comes from its seeded generator, this
+ * is all that is needed to play the game again exactly as it happened, and a
+ * replay runs headless at full speed. A recording takes one byte per turn.
+ *
+ * The log file format is, in big endian order:
+ * <pre>
+ * int    magic   ("CGIL")
+ * short  version (1)
+ * long   seed
+ * int    level width
+ * int    level height
+ * int    start level number
+ * int    count
+ * count bytes: the command of each turn (U, D, L, R or GameLoop.NO_MOVE)
+ * </pre>
+ *
+ * Running this class replays a log file, see main.
+ *
+ * @author prtrundl
+ */
+public class InputLog {
+
+    private static final int MAGIC = 0x4347494C;    //"CGIL"
+    private static final short VERSION = 1;
+
+    private final long seed;
+    private final int width;
+    private final int height;
+    private int startLevel = 1;
+
+    /**
+     * The command of each turn, in the order they were played
+     */
+    private byte[] commands = new byte[1024];
+    private int count;
+
+    /**
+     * Creates an empty log for a game. Usually created by
+     * GameEngine.startRecording.
+     *
+     * @param seed the seed of the engine's random number generator
+     * @param width the width of the levels in tiles
+     * @param height the height of the levels in tiles
+     */
+    public InputLog(long seed, int width, int height) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Records the level number the game was started at.
+     *
+     * @param level the first level number
+     */
+    synchronized void setStartLevel(int level) {
+        startLevel = level;
+    }
+
+    /**
+     * Adds the command of one turn to the end of the log. Safe to call while
+     * another thread saves the log.
+     *
+     * @param command U, D, L, R or GameLoop.NO_MOVE
+     */
+    public synchronized void record(char command) {
+        if (count == commands.length) {
+            commands = Arrays.copyOf(commands, count * 2);
+        }
+        commands[count++] = (byte) command;
+    }
+
+    /**
+     * Returns the number of turns in the log
+     *
+     * @return the number of recorded turns
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Returns the seed the recorded game was played with
+     *
+     * @return the seed of the engine's random number generator
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Plays the recorded game again on a new headless engine.
+     *
+     * @param turns the number of turns to play, which is capped at the number
+     * of turns in the log; use size() to play them all
+     * @return the engine, in the state it was in after that many turns
+     */
+    public GameEngine replay(int turns) {
+        GameEngine engine = new GameEngine(GameDisplay.NONE, width, height, seed);
+        engine.startGame(startLevel);
+        byte[] played;
+        int n;
+        synchronized (this) {
+            played = commands;
+            n = Math.min(turns, count);
+        }
+        for (int i = 0; i < n; i++) {
+            engine.playTurn((char) played[i]);
+        }
+        return engine;
+    }
+
+    /**
+     * Writes this log in the log file format.
+     *
+     * @param stream the stream to write to
+     * @throws IOException if writing fails
+     */
+    public synchronized void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(seed);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(startLevel);
+        out.writeInt(count);
+        out.write(commands, 0, count);
+        out.flush();
+    }
+
+    /**
+     * Reads a log written by write.
+     *
+     * @param stream the stream to read from
+     * @return the log
+     * @throws IOException if the stream cannot be read or does not hold a log
+     */
+    public static InputLog read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an input log");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported input log version " + version);
+        }
+        InputLog log = new InputLog(in.readLong(), in.readInt(), in.readInt());
+        log.startLevel = in.readInt();
+        log.count = in.readInt();
+        log.commands = new byte[Math.max(log.count, 1)];
+        in.readFully(log.commands, 0, log.count);
+        return log;
+    }
+
+    /**
+     * Saves this log to a file.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    /**
+     * Loads a log from a file.
+     *
+     * @param file the file to read
+     * @return the log
+     * @throws IOException if the file cannot be read or does not hold a log
+     */
+    public static InputLog load(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Replays a log file headless and prints the state of the game at the end,
+     * e.g. to reproduce a bug report. Pass a turn number to stop early.
+     *
+     * @param args the log file, optionally followed by the number of turns to
+     * play (default all of them)
+     * @throws IOException if the log cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        InputLog log = load(new File(args[0]));
+        EventLog.GAME.setThreshold(EventLog.Severity.WARN);     //game events would bury the results
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : log.size();
+        long start = System.nanoTime();
+        GameEngine engine = log.replay(turns);
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Replayed " + Math.min(turns, log.size()) + " of " + log.size() + " turns in "
+                + elapsed / 1000000 + " ms");
+        System.out.println("Level: " + engine.getLevelNumber() + " turn: " + engine.getTurnNumber()
+                + " score: " + engine.getScore() + " player: " + engine.getPlayer().getX() + ","
+                + engine.getPlayer().getY());
+    }
+}
@@ -0,0 +1,185 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A LatencyHistogram counts how many times something took each length of
+ * time. Times are put into buckets that grow with the time, four per power of
+ * two nanoseconds, so percentiles are accurate to within 25% from a nanosecond
+ * to several minutes with a fixed 256 buckets. Recording a time is a few
+ * arithmetic operations and array writes, and allocates nothing.
+ *
+ * Each histogram must only be recorded into by one thread at a time (e.g. the
+ * game thread or the Swing thread), but it can be read from any thread while
+ * it is being recorded into. Other threads that want it cleared call
+ * requestReset, and the recording thread clears it before the next time it
+ * records.
+ *
+ * @author prtrundl
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    /**
+     * Indexes into stats
+     */
+    private static final int COUNT = 0;
+    private static final int TOTAL = 1;
+    private static final int MAX = 2;
+
+    /**
+     * The number of times in each bucket, and the count, total and maximum of
+     * all times. Only the recording thread writes to these, using lazySet,
+     * which is as cheap as a plain write but still lets other threads see the
+     * values.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray stats = new AtomicLongArray(3);
+
+    /**
+     * Set by requestReset, and cleared by the recording thread when it acts
+     * on it.
+     */
+    private volatile boolean resetRequested;
+
+    /**
+     * Records one time.
+     *
+     * @param nanos the time taken in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        if (resetRequested) {
+            resetRequested = false;
+            reset();
+        }
+        int bucket = bucketOf(nanos);
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        stats.lazySet(COUNT, stats.get(COUNT) + 1);
+        stats.lazySet(TOTAL, stats.get(TOTAL) + nanos);
+        if (nanos > stats.get(MAX)) {
+            stats.lazySet(MAX, nanos);
+        }
+    }
+
+    /**
+     * Returns the bucket of a time: the position of its highest set bit, and
+     * the next SUB_BITS bits below it
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int high = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (high - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (high - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest time that falls in a bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int high = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (1L << high) + (sub << (high - SUB_BITS));
+        return lower + (1L << (high - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Returns the number of times recorded
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return stats.get(COUNT);
+    }
+
+    /**
+     * Returns the mean of the times recorded
+     *
+     * @return the mean in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getMean() {
+        long n = stats.get(COUNT);
+        return n == 0 ? 0 : stats.get(TOTAL) / n;
+    }
+
+    /**
+     * Returns the longest time recorded
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMax() {
+        return stats.get(MAX);
+    }
+
+    /**
+     * Returns a percentile of the times recorded, accurate to the size of the
+     * bucket it falls in.
+     *
+     * @param percent the percentile, e.g. 50 for the median or 99
+     * @return the time in nanoseconds that percent of the recorded times were
+     * at or below, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percent) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            snapshot[b] = counts.get(b);
+            n += snapshot[b];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percent / 100 * n);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += snapshot[b];
+            if (seen >= rank && snapshot[b] > 0) {
+                return Math.min(upperBound(b), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns a summary of the times recorded so far
+     *
+     * @return the count, mean, percentiles and maximum
+     */
+    public LatencySummary summarize() {
+        return new LatencySummary(getCount(), getMean() / 1000.0, getPercentile(50) / 1000.0,
+                getPercentile(99) / 1000.0, getMax() / 1000.0);
+    }
+
+    /**
+     * Asks the recording thread to forget every time recorded, the next time
+     * it records one. Can be called from any thread; the times recorded so far
+     * can still be read until then.
+     */
+    public void requestReset() {
+        resetRequested = true;
+    }
+
+    /**
+     * Forgets every time recorded. Should be called on the thread that
+     * records, or while nothing is being recorded; other threads should call
+     * requestReset instead.
+     */
+    public void reset() {
+        for (int b = 0; b < BUCKETS; b++) {
+            counts.set(b, 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            stats.set(i, 0);
+        }
+    }
+}
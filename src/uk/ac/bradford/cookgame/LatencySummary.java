@@ -0,0 +1,78 @@
+package uk.ac.bradford.cookgame;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A LatencySummary is a snapshot of a LatencyHistogram: the number of times
+ * recorded and their mean, median, 99th percentile and maximum in
+ * microseconds. It is the type of the latency attributes of the
+ * PerfMetricsMXBean, which JMX clients see as composite data.
+ *
+ * @author prtrundl
+ */
+public class LatencySummary {
+
+    private final long count;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final double maxMicros;
+
+    /**
+     * Creates a summary.
+     *
+     * @param count the number of times recorded
+     * @param meanMicros the mean time in microseconds
+     * @param p50Micros the median time in microseconds
+     * @param p99Micros the 99th percentile in microseconds
+     * @param maxMicros the longest time in microseconds
+     */
+    @ConstructorProperties({"count", "meanMicros", "p50Micros", "p99Micros", "maxMicros"})
+    public LatencySummary(long count, double meanMicros, double p50Micros, double p99Micros, double maxMicros) {
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * @return the number of times recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the mean time in microseconds
+     */
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    /**
+     * @return the median time in microseconds
+     */
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    /**
+     * @return the 99th percentile in microseconds
+     */
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    /**
+     * @return the longest time in microseconds
+     */
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50 %.1f p99 %.1f max %.1f us (%d)", p50Micros, p99Micros, maxMicros, count);
+    }
+}
@@ -1,6 +1,9 @@
 package uk.ac.bradford.cookgame;
 
 import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
+import javax.management.JMException;
 
 /**
  * This class is the entry point for the project, containing the main method
@@ -11,24 +14,155 @@ import java.awt.EventQueue;
  */
 public class Launcher {
 
+    /**
+     * Starts the game. Passing "--realtime" as an argument turns on real-time
+     * mode, where customers keep moving when no key is pressed. Passing
+     * "--size=WIDTHxHEIGHT" (e.g. --size=200x100) plays on levels of that many
+     * tiles instead of the default size. "--seed=N" fixes the random seed, and
+     * "--record=FILE" saves a recording of the game to FILE when the game is
+     * closed, which can be played back with InputLog. "--save=FILE" loads the
+     * game saved in FILE if there is one, saves the game to FILE every
+     * Autosaver.DEFAULT_INTERVAL turns and saves it again when the game is
+     * closed. "--log=LEVEL" sets the least important game events that are
+     * printed: debug, info (the default), warn or off. Frames are drawn by a
+     * FrameRenderer at the refresh rate of the display, or at N frames per
+     * second with "--fps=N"; "--passive" leaves painting to Swing instead.
+     *
+     * @param args command line arguments
+     */
     public static void main(String[] args) {
+        boolean realTimeArg = false;
+        int widthArg = GameEngine.LEVEL_WIDTH;
+        int heightArg = GameEngine.LEVEL_HEIGHT;
+        Long seedArg = null;
+        String recordArg = null;
+        String saveArg = null;
+        boolean passiveArg = false;
+        int fpsArg = 0;
+        for (String arg : args) {
+            if (arg.equals("--realtime")) {
+                realTimeArg = true;
+            } else if (arg.startsWith("--size=")) {
+                String[] size = arg.substring("--size=".length()).split("x");
+                widthArg = Integer.parseInt(size[0]);
+                heightArg = Integer.parseInt(size[1]);
+            } else if (arg.startsWith("--seed=")) {
+                seedArg = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--record=")) {
+                recordArg = arg.substring("--record=".length());
+            } else if (arg.startsWith("--save=")) {
+                saveArg = arg.substring("--save=".length());
+            } else if (arg.startsWith("--log=")) {
+                EventLog.GAME.setThreshold(EventLog.Severity.valueOf(arg.substring("--log=".length()).toUpperCase()));
+            } else if (arg.equals("--passive")) {
+                passiveArg = true;
+            } else if (arg.startsWith("--fps=")) {
+                fpsArg = Integer.parseInt(arg.substring("--fps=".length()));
+            }
+        }
+        final boolean realTime = realTimeArg;
+        final int width = widthArg;
+        final int height = heightArg;
+        final Long seed = seedArg;
+        final String record = recordArg;
+        final File save = saveArg == null ? null : new File(saveArg);
+        final boolean passive = passiveArg;
+        final int fps = fpsArg;
+        GameState loaded = null;
+        if (save != null && save.exists()) {
+            try {
+                loaded = GameState.read(save);
+            } catch (IOException e) {
+                System.out.println("Could not load " + save + ", starting a new game: " + e.getMessage());
+            }
+        }
+        final GameState saved = loaded;
         EventQueue.invokeLater(new Runnable() {
 
             /**
              * The run method starts the game in a separate thread. It creates
-             * the GUI, the engine and the input handler classes and connects
-             * those that call other objects.
+             * the GUI, the engine, the game loop and the input handler classes
+             * and connects those that call other objects.
              */
             @Override
             public void run() {
-                GameGUI gui = new GameGUI();            //create GUI
+                GameGUI gui = passive ? new GameGUI() : new GameGUI(fps);   //create GUI
                 gui.setVisible(true);                   //display GUI
-                GameEngine eng = new GameEngine(gui);   //create engine
-                InputHandler i = new InputHandler(eng); //create input handler
+                GameEngine eng;
+                if (saved != null) {
+                    eng = new GameEngine(gui, saved.width, saved.height, saved.seed);
+                    eng.setLevelsAhead(1);              //build the next level while this one is played
+                    eng.loadState(saved);               //carry on the saved game
+                } else {
+                    eng = seed == null ? new GameEngine(gui, width, height)
+                            : new GameEngine(gui, width, height, seed); //create engine
+                    eng.setLevelsAhead(1);
+                }
+                if (record != null) {
+                    if (saved != null) {
+                        System.out.println("Not recording: a recording must start from a new game");
+                    } else {
+                        saveOnExit(eng.startRecording(), new File(record));
+                    }
+                }
+                gui.showMetrics(eng.getMetrics());      //F3 shows the performance overlay
+                try {
+                    eng.getMetrics().register("game");  //and JMX clients can read the metrics
+                } catch (JMException e) {
+                    System.out.println("Could not register performance metrics: " + e.getMessage());
+                }
+                GameLoop loop = new GameLoop(eng, realTime ? GameLoop.REAL_TIME_TURN_MILLIS : 0); //create game loop
+                if (save != null) {
+                    Autosaver autosaver = new Autosaver(save);
+                    loop.setAutosaver(autosaver);
+                    saveGameOnExit(loop, eng, autosaver);
+                }
+                InputHandler i = new InputHandler(loop); //create input handler
                 gui.registerKeyHandler(i);              //registers handler with GUI
-                eng.startGame();                        //starts the game
+                loop.start();                           //starts the game on the loop thread
             }
         });
     }
 
+    /**
+     * Saves a recording of the game when the program exits.
+     *
+     * @param log the recording
+     * @param file the file to save it to
+     */
+    private static void saveOnExit(final InputLog log, final File file) {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    log.save(file);
+                    System.out.println("Saved " + log.size() + " turns to " + file);
+                } catch (IOException e) {
+                    System.out.println("Exception saving recording: " + e.getMessage());
+                }
+            }
+        }));
+    }
+
+    /**
+     * Stops the game loop and saves the game when the program exits.
+     *
+     * @param loop the loop playing the game
+     * @param engine the engine to save
+     * @param autosaver the Autosaver to save with
+     */
+    private static void saveGameOnExit(final GameLoop loop, final GameEngine engine, final Autosaver autosaver) {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loop.stop();
+                    autosaver.saveNow(engine);
+                } catch (IOException | InterruptedException e) {
+                    System.out.println("Exception saving game: " + e.getMessage());
+                }
+            }
+        }));
+    }
+
 }
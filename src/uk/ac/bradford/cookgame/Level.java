@@ -0,0 +1,412 @@
+package uk.ac.bradford.cookgame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.bradford.cookgame.GameEngine.TileType;
+
+/**
+ * The Level class stores the tiles that make up a game level. Levels can be
+ * much larger than the screen, so the tiles are split into square chunks of
+ * CHUNK_SIZE by CHUNK_SIZE tiles. Each chunk is stored as one contiguous block
+ * of a byte array holding the ordinal of each TileType, so a lookup is one
+ * array read and the tiles of a small area of the level are close together in
+ * memory.
+ *
+ * As well as the tile types, the class keeps a set of bitsets with one bit per
+ * tile, in the same order as the tiles, for the properties that the game
+ * checks most often (floor, walkable, blocking, food, table and breakable).
+ * They are updated every time a tile is set, so checking a property never
+ * needs to look at the tile type, and scanning for tiles with a property can
+ * skip 64 tiles at a time.
+ *
+ * Every chunk also has a version number that changes whenever one of its
+ * tiles is set, so copyFrom only needs to copy the chunks that have changed
+ * since the last copy.
+ *
+ * @author prtrundl
+ */
+public class Level {
+
+    /**
+     * Bitset of FLOOR1 and FLOOR2 tiles, where the player and customers can be
+     * spawned.
+     */
+    static final int FLOOR = 0;
+
+    /**
+     * Bitset of tiles customers can walk on: everything except walls, tables
+     * and food.
+     */
+    static final int WALKABLE = 1;
+
+    /**
+     * Bitset of tiles that block all movement: walls and tables.
+     */
+    static final int BLOCKING = 2;
+
+    /**
+     * Bitset of food tiles.
+     */
+    static final int FOOD = 3;
+
+    /**
+     * Bitset of table tiles.
+     */
+    static final int TABLE = 4;
+
+    /**
+     * Bitset of walls and broken walls, which the player can break.
+     */
+    static final int BREAKABLE = 5;
+
+    private static final int PROPERTIES = 6;
+
+    /**
+     * The width and height of a chunk in tiles, as a power of two.
+     */
+    static final int CHUNK_SHIFT = 4;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNK_TILES_SHIFT = 2 * CHUNK_SHIFT;
+    private static final int CHUNK_TILES = 1 << CHUNK_TILES_SHIFT;
+    private static final int CHUNK_WORDS = CHUNK_TILES >>> 6;
+
+    /**
+     * Used to give every level a different id, see copyFrom
+     */
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    /**
+     * All TileType values, indexed by ordinal.
+     */
+    private static final TileType[] TYPES = TileType.values();
+
+    /**
+     * The properties of each TileType as a bit mask (bit n set means the type
+     * belongs in bitset n), indexed by ordinal.
+     */
+    private static final int[] MASKS = new int[TYPES.length];
+
+    static {
+        for (TileType type : TYPES) {
+            int mask = 0;
+            if (type == TileType.FLOOR1 || type == TileType.FLOOR2) {
+                mask |= 1 << FLOOR;
+            }
+            if (type != TileType.WALL && type != TileType.TABLE
+                    && type != TileType.FOOD1 && type != TileType.FOOD2 && type != TileType.FOOD3) {
+                mask |= 1 << WALKABLE;
+            }
+            if (type == TileType.WALL || type == TileType.TABLE) {
+                mask |= 1 << BLOCKING;
+            }
+            if (type == TileType.FOOD1 || type == TileType.FOOD2 || type == TileType.FOOD3) {
+                mask |= 1 << FOOD;
+            }
+            if (type == TileType.TABLE) {
+                mask |= 1 << TABLE;
+            }
+            if (type == TileType.WALL || type == TileType.brokenWall1 || type == TileType.brokenWall2) {
+                mask |= 1 << BREAKABLE;
+            }
+            MASKS[type.ordinal()] = mask;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int chunksX;     //number of chunks across the level
+
+    /**
+     * The ordinal of the TileType of each tile. The tiles of chunk c are
+     * stored from index c * CHUNK_TILES, row by row (see indexOf).
+     */
+    private final byte[] tiles;
+
+    /**
+     * One bitset per property, each holding one bit per tile in the same order
+     * as the tiles array. Tiles in the parts of edge chunks that are outside
+     * the level never have any bits set.
+     */
+    private final long[][] bits;
+
+    /**
+     * The version of each chunk, increased every time one of its tiles is set.
+     */
+    private final int[] chunkVersions;
+
+    /**
+     * The id of this level, and the id of the level it was last copied from
+     * along with the versions of that level's chunks at the time (see
+     * copyFrom). copiedFrom is 0 if the tiles have been changed since.
+     */
+    private final int id = NEXT_ID.incrementAndGet();
+    private int copiedFrom;
+    private int[] copiedVersions;
+
+    /**
+     * Creates a level of the given size with every tile set to WALL.
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     */
+    public Level(int width, int height) {
+        this.width = width;
+        this.height = height;
+        chunksX = (width + CHUNK_MASK) >>> CHUNK_SHIFT;
+        int chunks = chunksX * ((height + CHUNK_MASK) >>> CHUNK_SHIFT);
+        tiles = new byte[chunks * CHUNK_TILES];
+        bits = new long[PROPERTIES][chunks * CHUNK_WORDS];
+        chunkVersions = new int[chunks];
+        int mask = MASKS[TileType.WALL.ordinal()];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = indexOf(x, y);
+                for (int p = 0; p < PROPERTIES; p++) {
+                    if ((mask & (1 << p)) != 0) {
+                        bits[p][i >>> 6] |= 1L << i;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the width of this level
+     *
+     * @return the width in tiles
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of this level
+     *
+     * @return the height in tiles
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns true if the given position is inside this level
+     *
+     * @param x the X position
+     * @param y the Y position
+     * @return true if the position is inside the level
+     */
+    public boolean contains(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * Returns the type of a tile
+     *
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     * @return the TileType of the tile
+     */
+    public TileType get(int x, int y) {
+        return TYPES[tiles[indexOf(x, y)]];
+    }
+
+    /**
+     * Changes the type of a tile, updating the property bitsets
+     *
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     * @param type the new TileType for the tile
+     */
+    public void set(int x, int y, TileType type) {
+        int i = indexOf(x, y);
+        chunkVersions[i >>> CHUNK_TILES_SHIFT]++;
+        copiedFrom = 0;
+        int mask = MASKS[type.ordinal()];
+        tiles[i] = (byte) type.ordinal();
+        for (int p = 0; p < PROPERTIES; p++) {
+            if ((mask & (1 << p)) != 0) {
+                bits[p][i >>> 6] |= 1L << i;
+            } else {
+                bits[p][i >>> 6] &= ~(1L << i);
+            }
+        }
+    }
+
+    /**
+     * Copies every tile from another level of the same size into this one. If
+     * this level was last copied from the same level and has not been changed
+     * since, only the chunks that have changed in the other level are copied.
+     *
+     * @param other the level to copy
+     * @throws IllegalArgumentException if the levels are different sizes
+     */
+    public void copyFrom(Level other) {
+        if (other.width != width || other.height != height) {
+            throw new IllegalArgumentException("Level sizes do not match");
+        }
+        if (copiedFrom != other.id) {
+            System.arraycopy(other.tiles, 0, tiles, 0, tiles.length);
+            for (int p = 0; p < PROPERTIES; p++) {
+                System.arraycopy(other.bits[p], 0, bits[p], 0, bits[p].length);
+            }
+            if (copiedVersions == null) {
+                copiedVersions = new int[chunkVersions.length];
+            }
+            System.arraycopy(other.chunkVersions, 0, copiedVersions, 0, copiedVersions.length);
+            for (int c = 0; c < chunkVersions.length; c++) {
+                chunkVersions[c]++;
+            }
+            copiedFrom = other.id;
+            return;
+        }
+        for (int c = 0; c < copiedVersions.length; c++) {
+            if (copiedVersions[c] != other.chunkVersions[c]) {
+                copiedVersions[c] = other.chunkVersions[c];
+                chunkVersions[c]++;
+                System.arraycopy(other.tiles, c * CHUNK_TILES, tiles, c * CHUNK_TILES, CHUNK_TILES);
+                for (int p = 0; p < PROPERTIES; p++) {
+                    System.arraycopy(other.bits[p], c * CHUNK_WORDS, bits[p], c * CHUNK_WORDS, CHUNK_WORDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the tiles of this level to a buffer, one byte per tile in the
+     * order they are stored in (chunk by chunk, including the parts of edge
+     * chunks outside the level), so the whole level is written in one copy.
+     *
+     * @param buffer the buffer to write to, which must have at least
+     * getStoredSize() bytes remaining
+     */
+    void writeTiles(ByteBuffer buffer) {
+        buffer.put(tiles);
+    }
+
+    /**
+     * Reads tiles written by writeTiles for a level of the same size into this
+     * level, rebuilding the property bitsets.
+     *
+     * @param buffer the buffer to read from
+     * @throws IllegalArgumentException if a tile is not a TileType ordinal
+     */
+    void readTiles(ByteBuffer buffer) {
+        buffer.get(tiles);
+        for (long[] property : bits) {
+            Arrays.fill(property, 0L);
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = indexOf(x, y);
+                int type = tiles[i];
+                if (type < 0 || type >= TYPES.length) {
+                    throw new IllegalArgumentException("Bad tile " + type + " at " + x + "," + y);
+                }
+                int mask = MASKS[type];
+                for (int p = 0; p < PROPERTIES; p++) {
+                    if ((mask & (1 << p)) != 0) {
+                        bits[p][i >>> 6] |= 1L << i;
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < chunkVersions.length; c++) {
+            chunkVersions[c]++;
+        }
+        copiedFrom = 0;
+    }
+
+    /**
+     * Returns the number of bytes writeTiles writes
+     *
+     * @return the number of stored tiles, which is the width and height
+     * rounded up to whole chunks
+     */
+    int getStoredSize() {
+        return tiles.length;
+    }
+
+    /**
+     * Returns true if a tile has one of the properties tracked by this class
+     *
+     * @param property one of FLOOR, WALKABLE, BLOCKING, FOOD, TABLE or
+     * BREAKABLE
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     * @return true if the tile has the property, false if it does not or the
+     * position is outside the level
+     */
+    boolean is(int property, int x, int y) {
+        if (!contains(x, y)) {
+            return false;
+        }
+        int i = indexOf(x, y);
+        return (bits[property][i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Returns the index of the next tile at or after the given index that has
+     * a property, so all tiles with a property can be visited with a loop
+     * such as: for (int i = next(p, 0); i >= 0; i = next(p, i + 1)). Tiles are
+     * visited chunk by chunk; the X and Y position of an index are given by
+     * xOf and yOf.
+     *
+     * @param property one of FLOOR, WALKABLE, BLOCKING, FOOD, TABLE or
+     * BREAKABLE
+     * @param from the index to start searching from
+     * @return the index of the next tile with the property, or -1 if there is
+     * none
+     */
+    int next(int property, int from) {
+        long[] words = bits[property];
+        int w = from >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * Returns the index of a tile in the tiles array and the bitsets
+     *
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     * @return the index of the tile
+     */
+    int indexOf(int x, int y) {
+        int chunk = (y >>> CHUNK_SHIFT) * chunksX + (x >>> CHUNK_SHIFT);
+        return (chunk << CHUNK_TILES_SHIFT) | ((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK);
+    }
+
+    /**
+     * Returns the X position of a tile index, see indexOf
+     *
+     * @param i the index of the tile
+     * @return the X position of the tile
+     */
+    int xOf(int i) {
+        return ((i >>> CHUNK_TILES_SHIFT) % chunksX << CHUNK_SHIFT) | (i & CHUNK_MASK);
+    }
+
+    /**
+     * Returns the Y position of a tile index, see indexOf
+     *
+     * @param i the index of the tile
+     * @return the Y position of the tile
+     */
+    int yOf(int i) {
+        return ((i >>> CHUNK_TILES_SHIFT) / chunksX << CHUNK_SHIFT) | ((i >>> CHUNK_SHIFT) & CHUNK_MASK);
+    }
+}
@@ -0,0 +1,335 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.Arrays;
+import uk.ac.bradford.cookgame.GameEngine.TileType;
+
+/**
+ * A LevelConnector makes sure a new level can be played: the player can get
+ * from the trash tile to every open tile (floor, door, food and so on) and to
+ * a tile next to every table, so every customer can be reached and has a
+ * table to go to. Random levels often have pockets of floor shut in by walls,
+ * and the connector joins them up by turning as few walls as possible into
+ * floor. Food counts as open because the player can walk onto it to pick it
+ * up.
+ *
+ * Everything is measured from the trash tile, which every level has in its
+ * top right corner. One search starts there and spreads over the level,
+ * entering open tiles for free and walls at a cost of one, using a double
+ * ended queue so tiles come out in order of the number of walls crossed (a
+ * 0-1 breadth first search). Each tile remembers which neighbour it was
+ * reached from, so the cheapest way back to the trash from anywhere can be
+ * followed and its walls carved. The search runs on a packed copy of the
+ * level, one byte per tile indexed by y * width + x holding the kind of tile,
+ * whether it has been reached or connected and the direction it was reached
+ * from. Each tile is added to the queue at most once, so a pass takes time in
+ * proportion to the size of the level and nothing is allocated after
+ * construction.
+ *
+ * A pocket shut in by tables cannot be reached through walls alone. If the
+ * first pass leaves any, a second pass is run that can also carve through
+ * tables, so tables are only removed when there is no other way in.
+ *
+ * @author prtrundl
+ */
+class LevelConnector {
+
+    /**
+     * The kinds of tile stored in the low bits of each byte of tiles. OPEN
+     * tiles can be walked onto by the player, WALL and TABLE tiles can be
+     * carved and other tiles are left alone.
+     */
+    private static final int OPEN = 1;
+    private static final int WALL = 2;
+    private static final int TABLE = 4;
+    private static final int KIND = OPEN | WALL | TABLE;
+
+    /**
+     * The kind of each TileType, indexed by ordinal
+     */
+    private static final byte[] KINDS = new byte[TileType.values().length];
+
+    static {
+        for (TileType type : TileType.values()) {
+            KINDS[type.ordinal()] = (byte) (type == TileType.WALL ? WALL : type == TileType.TABLE ? TABLE : OPEN);
+        }
+    }
+
+    /**
+     * Set once the search has reached a tile, and once a tile can be reached
+     * from the trash without carving anything.
+     */
+    private static final int REACHED = 8;
+    private static final int CONNECTED = 16;
+
+    /**
+     * The direction a reached tile was reached from, in the top two bits:
+     * the tile to the left, right, above or below.
+     */
+    private static final int FROM_SHIFT = 5;
+    private static final int FROM_LEFT = 0;
+    private static final int FROM_RIGHT = 1 << FROM_SHIFT;
+    private static final int FROM_ABOVE = 2 << FROM_SHIFT;
+    private static final int FROM_BELOW = 3 << FROM_SHIFT;
+
+    private final int width;
+    private final int height;
+
+    /**
+     * The packed state of each tile of the level being connected
+     */
+    private final byte[] tiles;
+
+    /**
+     * The search queue, used as a ring buffer with tiles that cost nothing to
+     * enter added at the front and tiles that must be carved at the back.
+     * Each tile is added at most once so it never holds more than every tile.
+     * Also used by fill.
+     */
+    private final int[] queue;
+
+    /**
+     * Creates a connector for levels of the given size
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     */
+    LevelConnector(int width, int height) {
+        this.width = width;
+        this.height = height;
+        tiles = new byte[width * height];
+        queue = new int[width * height];
+    }
+
+    /**
+     * Connects every open tile and table of a level to the trash tile in its
+     * top right corner, carving walls (and tables if there is no other way)
+     * into FLOOR1 where needed.
+     *
+     * @param level the level to connect
+     * @return the number of tiles carved
+     */
+    int connect(Level level) {
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                tiles[i] = KINDS[level.get(x, y).ordinal()];
+            }
+        }
+        int carved = pass(level, WALL);
+        if (carved < 0) {
+            carved = -carved - 1 + pass(level, WALL | TABLE);
+        }
+        return carved;
+    }
+
+    /**
+     * Searches the level from the trash tile and joins up everything that
+     * is not connected yet.
+     *
+     * @param carvable the kinds of tile that may be carved
+     * @return the number of tiles carved, or -1 - that number if some tiles
+     * could not be connected
+     */
+    private int pass(Level level, int carvable) {
+        search(carvable);
+        int carved = 0;
+        boolean stuck = false;
+        for (int i = 0; i < tiles.length; i++) {
+            int state = tiles[i];
+            int start;
+            if ((state & CONNECTED) != 0) {
+                continue;
+            } else if ((state & KIND) == OPEN) {
+                start = i;
+            } else if ((state & KIND) == TABLE && !hasConnectedNeighbour(i)) {
+                start = reachedNeighbour(i);
+            } else {
+                continue;
+            }
+            if (start < 0 || (tiles[start] & REACHED) == 0) {
+                stuck = true;
+            } else {
+                carved += join(level, start);
+            }
+        }
+        return stuck ? -1 - carved : carved;
+    }
+
+    /**
+     * Runs the 0-1 breadth first search from the trash tile, recording where
+     * each tile was reached from and marking the tiles reached without
+     * carving as connected.
+     *
+     * @param carvable the kinds of tile that may be carved
+     */
+    private void search(int carvable) {
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] &= KIND;
+        }
+        int n = queue.length;
+        int trash = width - 1;
+        int head = 0;
+        int tail = 1;
+        queue[0] = trash;
+        tiles[trash] |= REACHED | CONNECTED;
+        while (head != tail) {
+            int i = queue[head];
+            head = head + 1 == n ? 0 : head + 1;
+            int x = i % width;
+            int connected = tiles[i] & CONNECTED;
+            int reached = 0;
+            if (x > 0) {
+                reached |= visit(i - 1, FROM_RIGHT, connected, carvable);
+            }
+            if (x < width - 1) {
+                reached |= visit(i + 1, FROM_LEFT, connected, carvable) << 2;
+            }
+            if (i >= width) {
+                reached |= visit(i - width, FROM_BELOW, connected, carvable) << 4;
+            }
+            if (i + width < n) {
+                reached |= visit(i + width, FROM_ABOVE, connected, carvable) << 6;
+            }
+            for (int d = 0; reached != 0; d++, reached >>>= 2) {
+                int j = d == 0 ? i - 1 : d == 1 ? i + 1 : d == 2 ? i - width : i + width;
+                if ((reached & 1) != 0) {
+                    head = head == 0 ? n - 1 : head - 1;   //free to enter, so searched next
+                    queue[head] = j;
+                } else if ((reached & 2) != 0) {
+                    queue[tail] = j;                        //must be carved, so searched later
+                    tail = tail + 1 == n ? 0 : tail + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks a neighbour of a tile being searched as reached, if it has not
+     * been reached yet and is open or can be carved.
+     *
+     * @return 1 if the neighbour is open, 2 if it must be carved, or 0 if it
+     * was not reached
+     */
+    private int visit(int j, int from, int connected, int carvable) {
+        int state = tiles[j];
+        if (state == OPEN) {
+            tiles[j] = (byte) (OPEN | REACHED | connected | from);
+            return 1;
+        }
+        if ((state & REACHED) == 0 && (state & carvable) != 0) {
+            tiles[j] = (byte) (state | REACHED | from);
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the tile a reached tile was reached from
+     */
+    private int from(int i) {
+        switch (tiles[i] & FROM_BELOW) {
+            case FROM_LEFT:
+                return i - 1;
+            case FROM_RIGHT:
+                return i + 1;
+            case FROM_ABOVE:
+                return i - width;
+            default:
+                return i + width;
+        }
+    }
+
+    /**
+     * Connects the area around a reached tile by carving every wall or table
+     * on the cheapest way back to a connected tile, then marks everything
+     * that is now joined to it as connected.
+     *
+     * @return the number of tiles carved
+     */
+    private int join(Level level, int start) {
+        int carved = 0;
+        for (int i = start; (tiles[i] & CONNECTED) == 0; i = from(i)) {
+            if ((tiles[i] & KIND) != OPEN) {
+                tiles[i] = (byte) (tiles[i] & ~KIND | OPEN);
+                level.set(i % width, i / width, TileType.FLOOR1);
+                carved++;
+            }
+        }
+        fill(start);
+        return carved;
+    }
+
+    /**
+     * Marks every open tile joined to a tile as connected, with a flood fill
+     * that stops at tiles already connected.
+     */
+    private void fill(int start) {
+        int head = 0;
+        int tail = 0;
+        tiles[start] |= CONNECTED;
+        queue[tail++] = start;
+        while (head < tail) {
+            int i = queue[head++];
+            int x = i % width;
+            if (x > 0) {
+                tail = fillTile(i - 1, tail);
+            }
+            if (x < width - 1) {
+                tail = fillTile(i + 1, tail);
+            }
+            if (i >= width) {
+                tail = fillTile(i - width, tail);
+            }
+            if (i + width < tiles.length) {
+                tail = fillTile(i + width, tail);
+            }
+        }
+    }
+
+    /**
+     * Adds a tile to the flood fill queue if it is open and not connected
+     * yet.
+     *
+     * @return the new tail of the queue
+     */
+    private int fillTile(int i, int tail) {
+        if ((tiles[i] & (KIND | CONNECTED)) == OPEN) {
+            tiles[i] |= CONNECTED;
+            queue[tail++] = i;
+        }
+        return tail;
+    }
+
+    /**
+     * Returns true if a tile has a connected neighbour.
+     */
+    private boolean hasConnectedNeighbour(int i) {
+        int x = i % width;
+        return (x > 0 && is(i - 1, CONNECTED)) || (x < width - 1 && is(i + 1, CONNECTED))
+                || (i >= width && is(i - width, CONNECTED)) || (i + width < tiles.length && is(i + width, CONNECTED));
+    }
+
+    /**
+     * Returns a neighbour of a tile that the search reached, or -1 if there
+     * is none.
+     */
+    private int reachedNeighbour(int i) {
+        int x = i % width;
+        if (x > 0 && is(i - 1, REACHED)) {
+            return i - 1;
+        }
+        if (x < width - 1 && is(i + 1, REACHED)) {
+            return i + 1;
+        }
+        if (i >= width && is(i - width, REACHED)) {
+            return i - width;
+        }
+        if (i + width < tiles.length && is(i + width, REACHED)) {
+            return i + width;
+        }
+        return -1;
+    }
+
+    private boolean is(int i, int flag) {
+        return (tiles[i] & flag) != 0;
+    }
+}
@@ -0,0 +1,112 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * A LevelPipeline builds the next few levels of a game on a background thread
+ * while the current one is played, so that clearing a level only has to swap
+ * in one that is already built instead of holding up the turn that cleared
+ * it. Levels are built in order, one at a time, by a single thread that is
+ * only used by this pipeline, so whatever the build function uses (e.g. a
+ * LevelConnector) needs no locking as long as nothing else uses it.
+ *
+ * A level is only ever built from its number (see GameEngine.prepareLevel),
+ * so a level built ahead is exactly the level that would have been built when
+ * it was needed, and a game plays out the same with or without a pipeline.
+ *
+ * All methods must be called from the thread that plays the game.
+ *
+ * @author prtrundl
+ */
+class LevelPipeline {
+
+    private final IntFunction<PreparedLevel> build;
+    private final int depth;
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "level-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The levels being built or waiting to be taken, for level numbers first,
+     * first + 1 and so on
+     */
+    private final ArrayDeque<Future<PreparedLevel>> queued = new ArrayDeque<>();
+    private int first;
+
+    /**
+     * Creates a pipeline. Nothing is built until start or take is called.
+     *
+     * @param build builds the level with a given number, called on the
+     * background thread
+     * @param depth the number of levels to build ahead of the one being
+     * played, at least 1
+     */
+    LevelPipeline(IntFunction<PreparedLevel> build, int depth) {
+        this.build = build;
+        this.depth = depth;
+    }
+
+    /**
+     * Starts building levels from the given number on, dropping any levels
+     * already built or being built for other numbers.
+     *
+     * @param number the number of the first level to build
+     */
+    void start(int number) {
+        if (number != first) {
+            for (Future<PreparedLevel> level : queued) {
+                level.cancel(false);
+            }
+            queued.clear();
+            first = number;
+        }
+        while (queued.size() < depth) {
+            final int next = first + queued.size();
+            queued.add(builder.submit(() -> build.apply(next)));
+        }
+    }
+
+    /**
+     * Returns a level, waiting for it to be built if it is not ready yet, and
+     * starts building the levels after it.
+     *
+     * @param number the number of the level wanted
+     * @return the level
+     */
+    PreparedLevel take(int number) {
+        start(number);
+        Future<PreparedLevel> level = queued.poll();
+        first++;
+        start(first);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return level.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;     //the level is still needed, so wait for it anyway
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not build level " + number, e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops building levels and lets the background thread finish.
+     */
+    void close() {
+        builder.shutdownNow();
+    }
+}
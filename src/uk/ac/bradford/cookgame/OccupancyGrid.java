@@ -0,0 +1,104 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.Arrays;
+
+/**
+ * An OccupancyGrid records which entity is standing on each tile of a level,
+ * so that checking whether a tile is occupied is a single array read instead
+ * of a loop over every customer. Entities are identified by a positive int id
+ * and 0 means the tile is empty. The grid is kept up to date by the
+ * CustomerStore, which places, moves and removes customers on it (using
+ * handle + 1 as the id), and is cleared by the GameEngine when a level
+ * starts.
+ *
+ * @author prtrundl
+ */
+class OccupancyGrid {
+
+    /**
+     * The value stored for tiles that nobody is standing on
+     */
+    static final int EMPTY = 0;
+
+    private final int width;
+    private final int height;
+
+    /**
+     * The id of the entity on each tile, indexed by y * width + x
+     */
+    private final int[] cells;
+
+    /**
+     * Creates an empty OccupancyGrid for a level of the given size
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     */
+    OccupancyGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        cells = new int[width * height];
+    }
+
+    /**
+     * Returns the id of the entity standing on a tile
+     *
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     * @return the entity id, or EMPTY if the tile is empty or outside the
+     * level
+     */
+    int get(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return EMPTY;
+        }
+        return cells[y * width + x];
+    }
+
+    /**
+     * Returns true if an entity is standing on a tile
+     *
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     * @return true if the tile is occupied
+     */
+    boolean isOccupied(int x, int y) {
+        return get(x, y) != EMPTY;
+    }
+
+    /**
+     * Records that an entity is standing on a tile. Positions outside the
+     * level are ignored.
+     *
+     * @param id the id of the entity
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     */
+    void place(int id, int x, int y) {
+        if (x >= 0 && x < width && y >= 0 && y < height) {
+            cells[y * width + x] = id;
+        }
+    }
+
+    /**
+     * Records that an entity has left a tile. The tile is only cleared if it
+     * still holds the given id, so an entity leaving a tile never removes
+     * another entity that has since moved onto it.
+     *
+     * @param id the id of the entity
+     * @param x the X position of the tile
+     * @param y the Y position of the tile
+     */
+    void remove(int id, int x, int y) {
+        if (get(x, y) == id) {
+            cells[y * width + x] = EMPTY;
+        }
+    }
+
+    /**
+     * Empties every tile, used when a new level is created.
+     */
+    void clear() {
+        Arrays.fill(cells, EMPTY);
+    }
+}
@@ -0,0 +1,216 @@
+package uk.ac.bradford.cookgame;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The PerfMetrics class records where the time goes while a game runs:
+ * latency histograms for turns, customer moves, level generation and frames,
+ * how steadily frames are shown,
+ * counts of customer moves and path lookups, and the allocation rate of the
+ * game thread. Every GameEngine has one (see GameEngine.getMetrics).
+ *
+ * Recording is cheap enough to leave on all the time: a turn costs two calls
+ * to System.nanoTime and a histogram update, and nothing is allocated. The
+ * allocation rate is only worked out when it is read. The frame histograms
+ * are only created when the first frame is recorded, so the many headless
+ * engines of a SessionHost do not carry them.
+ *
+ * The metrics can be read through JMX once register has been called, and are
+ * drawn by the Canvas when its overlay is turned on with F3.
+ *
+ * @author prtrundl
+ */
+public class PerfMetrics implements PerfMetricsMXBean {
+
+    final LatencyHistogram turn = new LatencyHistogram();
+    final LatencyHistogram customerMove = new LatencyHistogram();
+    final LatencyHistogram levelGeneration = new LatencyHistogram();
+
+    /**
+     * Created by the thread that records into them, the first time it does,
+     * and null until then
+     */
+    private volatile LatencyHistogram frame;
+    private volatile LatencyHistogram frameJitter;
+
+    private final AtomicLong customersMoved = new AtomicLong();
+    private final AtomicLong pathQueries = new AtomicLong();
+
+    /**
+     * Set by reset, which can be called from any thread through JMX. The
+     * counters are only written by the game thread, so it clears them itself
+     * the next time it records a customer update.
+     */
+    private volatile boolean countersResetRequested;
+
+    /**
+     * The thread that last played a turn, whose allocations are measured
+     */
+    private volatile Thread turnThread;
+
+    private long lastAllocated = -1;
+    private long lastAllocationTime;
+
+    /**
+     * Records the time taken by a turn. Called by the GameEngine.
+     *
+     * @param nanos the time taken
+     */
+    void recordTurn(long nanos) {
+        turn.record(nanos);
+        Thread current = Thread.currentThread();
+        if (turnThread != current) {
+            turnThread = current;
+        }
+    }
+
+    /**
+     * Records a customer update. Called by the GameEngine on the game thread.
+     *
+     * @param nanos the time taken to move all customers
+     * @param queries the number of customers that looked for a way to a table
+     * @param moved the number of customers that moved
+     */
+    void recordCustomerMove(long nanos, int queries, int moved) {
+        customerMove.record(nanos);
+        if (countersResetRequested) {
+            countersResetRequested = false;
+            pathQueries.lazySet(0);
+            customersMoved.lazySet(0);
+        }
+        pathQueries.lazySet(pathQueries.get() + queries);      //only the game thread writes
+        customersMoved.lazySet(customersMoved.get() + moved);
+    }
+
+    /**
+     * Records the time taken to draw a frame. Called by the Canvas on the
+     * thread that draws the frames.
+     *
+     * @param nanos the time taken
+     */
+    void recordFrame(long nanos) {
+        LatencyHistogram histogram = frame;
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            frame = histogram;
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Records how far the time between two frames was from the frame period.
+     * Called by the FrameRenderer on its thread.
+     *
+     * @param nanos the difference from the period
+     */
+    void recordFrameJitter(long nanos) {
+        LatencyHistogram histogram = frameJitter;
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            frameJitter = histogram;
+        }
+        histogram.record(nanos);
+    }
+
+    @Override
+    public LatencySummary getTurnLatency() {
+        return turn.summarize();
+    }
+
+    @Override
+    public LatencySummary getCustomerMoveLatency() {
+        return customerMove.summarize();
+    }
+
+    @Override
+    public LatencySummary getLevelGenerationLatency() {
+        return levelGeneration.summarize();
+    }
+
+    @Override
+    public LatencySummary getFrameTime() {
+        return summarize(frame);
+    }
+
+    @Override
+    public LatencySummary getFrameJitter() {
+        return summarize(frameJitter);
+    }
+
+    /**
+     * Returns a summary of a histogram that may not have been created yet
+     */
+    private static LatencySummary summarize(LatencyHistogram histogram) {
+        return histogram == null ? new LatencySummary(0, 0, 0, 0, 0) : histogram.summarize();
+    }
+
+    @Override
+    public long getCustomersMoved() {
+        return customersMoved.get();
+    }
+
+    @Override
+    public long getPathQueries() {
+        return pathQueries.get();
+    }
+
+    @Override
+    public synchronized double getAllocationRate() {
+        Thread thread = turnThread;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (thread == null || !(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        long allocated = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(thread.getId());
+        long now = System.nanoTime();
+        double rate = -1;
+        if (lastAllocated >= 0 && allocated >= lastAllocated && now > lastAllocationTime) {
+            rate = (allocated - lastAllocated) * 1e9 / (now - lastAllocationTime);
+        }
+        lastAllocated = allocated;
+        lastAllocationTime = now;
+        return rate;
+    }
+
+    /**
+     * Forgets everything recorded so far. Each histogram and counter is cleared
+     * by the thread that records into it, the next time it records, so a reset
+     * from a JMX thread never races with the game or drawing threads.
+     */
+    @Override
+    public void reset() {
+        turn.requestReset();
+        customerMove.requestReset();
+        levelGeneration.requestReset();
+        requestReset(frame);
+        requestReset(frameJitter);
+        countersResetRequested = true;
+    }
+
+    /**
+     * Asks for a histogram to be reset, if it has been created
+     */
+    private static void requestReset(LatencyHistogram histogram) {
+        if (histogram != null) {
+            histogram.requestReset();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, so they can be
+     * read with a JMX client.
+     *
+     * @param name the name to register under, to tell several games apart
+     * @return the object name the metrics were registered as
+     * @throws JMException if the metrics cannot be registered
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("uk.ac.bradford.cookgame:type=PerfMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+}
@@ -0,0 +1,60 @@
+package uk.ac.bradford.cookgame;
+
+/**
+ * The management interface of PerfMetrics, so the performance of a running
+ * game can be watched with a JMX client such as JConsole or VisualVM under
+ * uk.ac.bradford.cookgame:type=PerfMetrics.
+ *
+ * @author prtrundl
+ */
+public interface PerfMetricsMXBean {
+
+    /**
+     * @return the time taken by each call to GameEngine.doTurn
+     */
+    LatencySummary getTurnLatency();
+
+    /**
+     * @return the time taken to move all customers, once every three turns
+     */
+    LatencySummary getCustomerMoveLatency();
+
+    /**
+     * @return the time taken to generate the tiles of each level played
+     */
+    LatencySummary getLevelGenerationLatency();
+
+    /**
+     * @return the time taken to paint each frame, or nothing if the game has
+     * no display
+     */
+    LatencySummary getFrameTime();
+
+    /**
+     * @return how far the time between two frames shown by a FrameRenderer
+     * was from its frame period, or nothing if frames are painted by Swing
+     */
+    LatencySummary getFrameJitter();
+
+    /**
+     * @return the number of customer steps taken
+     */
+    long getCustomersMoved();
+
+    /**
+     * @return the number of times a customer looked up its way to a table
+     */
+    long getPathQueries();
+
+    /**
+     * @return the bytes allocated per second by the thread playing the turns,
+     * since the last call, or -1 if the JVM cannot measure it
+     */
+    double getAllocationRate();
+
+    /**
+     * Forgets everything recorded so far. Each value is cleared the next time
+     * something is recorded into it, so it can still be read until then.
+     */
+    void reset();
+}
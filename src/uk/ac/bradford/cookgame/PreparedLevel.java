@@ -0,0 +1,68 @@
+package uk.ac.bradford.cookgame;
+
+/**
+ * A PreparedLevel is everything the GameEngine needs to start a level: the
+ * tiles, where the customers start and what they want, where the player
+ * starts and the spawn positions left over. It is built from nothing but the
+ * level number and the engine's seed (see GameEngine.prepareLevel), so it can
+ * be built ahead of time on another thread and swapped in when the level
+ * before it is cleared (see LevelPipeline).
+ *
+ * @author prtrundl
+ */
+class PreparedLevel {
+
+    /**
+     * The level number this level was built for
+     */
+    final int number;
+
+    /**
+     * The tiles of the level
+     */
+    final Level tiles;
+
+    /**
+     * The customers, in the order they are added to the customers store.
+     * Every array has one entry per customer.
+     */
+    final int[] customerX;
+    final int[] customerY;
+    final int[] maxPatience;
+    final int[] foodWanted;
+
+    /**
+     * The position the player starts at
+     */
+    final int playerX;
+    final int playerY;
+
+    /**
+     * The spawn positions not used by the customers or the player
+     */
+    final CellSet spawns;
+
+    /**
+     * The time taken to generate the tiles, in nanoseconds. It is recorded in
+     * PerfMetrics by the game thread when the level is taken, whichever
+     * thread built it.
+     */
+    final long generationNanos;
+
+    /**
+     * Creates a PreparedLevel. The arrays and the set are kept, not copied.
+     */
+    PreparedLevel(int number, Level tiles, int[] customerX, int[] customerY, int[] maxPatience,
+            int[] foodWanted, int playerX, int playerY, CellSet spawns, long generationNanos) {
+        this.number = number;
+        this.tiles = tiles;
+        this.customerX = customerX;
+        this.customerY = customerY;
+        this.maxPatience = maxPatience;
+        this.foodWanted = foodWanted;
+        this.playerX = playerX;
+        this.playerY = playerY;
+        this.spawns = spawns;
+        this.generationNanos = generationNanos;
+    }
+}
@@ -0,0 +1,286 @@
+package uk.ac.bradford.cookgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The SessionHost class runs many independent headless games (GameSession
+ * objects) in one process, for example to serve many players or bots from
+ * one machine. Every tick the sessions are split into one batch per worker
+ * thread and each worker plays the next queued command of every session in
+ * its batch, so thousands of sessions share a small fixed pool of threads
+ * instead of needing one thread each.
+ *
+ * Each session is only used by one worker during a tick and ticks never
+ * overlap, so the engines need no locking. A session whose engine throws an
+ * exception is closed without affecting the others.
+ *
+ * Running this class runs a number of sessions with random moves and prints
+ * the memory used per session and the number of turns played per second, see
+ * main. At 18x9 a session takes about 13 KB, of which about 6.5 KB are the
+ * turn, customer move and level generation histograms of its PerfMetrics.
+ *
+ * @author prtrundl
+ */
+public class SessionHost {
+
+    private final int threads;
+    private final ExecutorService workers;
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * The open sessions. Replaced rather than changed when a session is opened
+     * or closed, so a tick can use it without holding the lock.
+     */
+    private volatile GameSession[] sessions = new GameSession[0];
+
+    /**
+     * Held while ticking, so ticks never overlap
+     */
+    private final Object tickLock = new Object();
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Creates a host with one worker thread per processor.
+     */
+    public SessionHost() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a host.
+     *
+     * @param threads the number of worker threads to play turns on
+     */
+    public SessionHost(int threads) {
+        this.threads = Math.max(1, threads);
+        final AtomicInteger count = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread worker = new Thread(r, "session-" + count.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+    }
+
+    /**
+     * Starts a new headless game and adds it to the host.
+     *
+     * @param width the width of the levels in tiles
+     * @param height the height of the levels in tiles
+     * @param seed the seed for the game's random number generator
+     * @return the new session
+     */
+    public GameSession open(int width, int height, long seed) {
+        GameEngine engine = new GameEngine(GameDisplay.NONE, width, height, seed);
+        engine.startGame();
+        GameSession session = new GameSession(nextId.incrementAndGet(), engine);
+        synchronized (this) {
+            GameSession[] grown = Arrays.copyOf(sessions, sessions.length + 1);
+            grown[sessions.length] = session;
+            sessions = grown;
+        }
+        return session;
+    }
+
+    /**
+     * Removes a session from the host. It is not ticked again after the
+     * current tick.
+     *
+     * @param session the session to remove
+     */
+    public synchronized void close(GameSession session) {
+        GameSession[] current = sessions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == session) {
+                GameSession[] shrunk = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+                sessions = shrunk;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of open sessions
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+        return sessions.length;
+    }
+
+    /**
+     * Plays the next queued command of every session, spread over the worker
+     * threads, and waits for all of them to finish.
+     *
+     * @return the number of turns played
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int tick() throws InterruptedException {
+        synchronized (tickLock) {
+            final GameSession[] current = sessions;
+            int batches = Math.min(threads, current.length);
+            if (batches <= 1) {
+                return tick(current, 0, current.length);
+            }
+            List<Callable<Integer>> tasks = new ArrayList<>(batches);
+            for (int b = 0; b < batches; b++) {
+                final int from = (int) ((long) current.length * b / batches);
+                final int to = (int) ((long) current.length * (b + 1) / batches);
+                tasks.add(() -> tick(current, from, to));
+            }
+            int turns = 0;
+            for (Future<Integer> result : workers.invokeAll(tasks)) {
+                try {
+                    turns += result.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return turns;
+        }
+    }
+
+    /**
+     * Ticks a batch of sessions, closing any that fail
+     */
+    private int tick(GameSession[] batch, int from, int to) {
+        int turns = 0;
+        for (int i = from; i < to; i++) {
+            try {
+                if (batch[i].tick()) {
+                    turns++;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Session " + batch[i].getId() + " failed: " + e);
+                close(batch[i]);
+            }
+        }
+        return turns;
+    }
+
+    /**
+     * Starts ticking on a thread of its own at a fixed rate, like the
+     * GameLoop does for a single game.
+     *
+     * @param ticksPerSecond the number of ticks per second
+     */
+    public synchronized void start(int ticksPerSecond) {
+        if (thread == null) {
+            final long tickNanos = 1000000000L / ticksPerSecond;
+            running = true;
+            thread = new Thread(() -> {
+                long nextTick = System.nanoTime();
+                try {
+                    while (running) {
+                        tick();
+                        nextTick += tickNanos;
+                        long wait = nextTick - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        } else if (wait < -tickNanos) {
+                            nextTick = System.nanoTime();   //fell behind, don't try to catch up
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    //stopped
+                }
+            }, "session-host");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the ticking thread started by start and waits for it to finish.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+        Thread ticking;
+        synchronized (this) {
+            running = false;
+            ticking = thread;
+            thread = null;
+        }
+        if (ticking != null) {
+            ticking.join();
+        }
+    }
+
+    /**
+     * Stops ticking and shuts down the worker threads.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown() throws InterruptedException {
+        stop();
+        workers.shutdown();
+    }
+
+    /**
+     * Runs many sessions with random moves and prints how much memory each
+     * session takes and how many turns per second the host plays.
+     *
+     * @param args optional number of sessions (default 1000), number of turns
+     * per session (default 1000), number of worker threads (default one per
+     * processor), and level width and height in tiles
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        EventLog.GAME.setThreshold(EventLog.Severity.WARN);     //game events would bury the results
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        SessionHost host = args.length > 2 ? new SessionHost(Integer.parseInt(args[2])) : new SessionHost();
+        int width = args.length > 4 ? Integer.parseInt(args[3]) : GameEngine.LEVEL_WIDTH;
+        int height = args.length > 4 ? Integer.parseInt(args[4]) : GameEngine.LEVEL_HEIGHT;
+        char[] moves = {'U', 'D', 'L', 'R'};
+        Random random = new Random(1);
+
+        long before = usedMemory();
+        GameSession[] opened = new GameSession[count];
+        for (int i = 0; i < count; i++) {
+            opened[i] = host.open(width, height, i);
+        }
+        long after = usedMemory();
+
+        long start = System.nanoTime();
+        long played = 0;
+        for (int t = 0; t < turns; t++) {
+            for (GameSession session : opened) {
+                session.offer(moves[random.nextInt(moves.length)]);
+            }
+            played += host.tick();
+        }
+        long elapsed = System.nanoTime() - start;
+        host.shutdown();
+
+        long best = 0;
+        for (GameSession session : opened) {
+            best = Math.max(best, session.getScore());
+        }
+        System.out.println("Sessions: " + count + " (" + width + "x" + height + ") on " + host.threads
+                + " threads, " + (after - before) / count + " bytes per session");
+        System.out.println("Turns: " + played + " in " + elapsed / 1000000 + " ms ("
+                + (long) (played / (elapsed / 1e9)) + " turns/s), best score: " + best);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}